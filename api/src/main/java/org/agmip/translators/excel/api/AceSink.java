@@ -0,0 +1,15 @@
+package org.agmip.translators.excel.api;
+
+import java.io.IOException;
+
+/**
+ * Receives the raw ACE components produced by {@link ExcelModel#run(AceSink)}, one
+ * completed experiment, weather station or soil at a time.
+ */
+public interface AceSink {
+  void experiment(byte[] raw) throws IOException;
+
+  void weather(byte[] raw) throws IOException;
+
+  void soil(byte[] raw) throws IOException;
+}
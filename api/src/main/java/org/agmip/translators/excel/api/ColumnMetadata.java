@@ -0,0 +1,82 @@
+package org.agmip.translators.excel.api;
+
+import java.util.List;
+
+/**
+ * What is known about each column of a {@link DataNode} from its variable name: the
+ * resolved ACE path and whether it holds a date, a root field or a linkage. Built once
+ * per sheet so the per-cell code only reads flags. Columns are indexed by their sheet
+ * column; columns without a variable, such as blank or {@code !} comment headers, have
+ * none.
+ */
+public class ColumnMetadata {
+  private final Column[] columns;
+
+  private ColumnMetadata(Column[] columns) {
+    this.columns = columns;
+  }
+
+  /**
+   * Metadata of the variables, each placed at the zero-based sheet column of the same
+   * index in {@code positions}.
+   */
+  public static ColumnMetadata of(List<String> variables, List<Integer> positions, List<String> linkages) {
+    int width = 0;
+    for (int p : positions) {
+      width = Math.max(width, p + 1);
+    }
+    Column[] columns = new Column[width];
+    for (int i = 0; i < variables.size(); i++) {
+      String v = variables.get(i);
+      columns[positions.get(i)] = new Column(v, Util.lookupPath(v), isDate(v), Util.ROOT_FIELDS.contains(v), linkages.contains(v));
+    }
+    return new ColumnMetadata(columns);
+  }
+
+  /**
+   * Column of a sheet column, {@code null} when no variable is in it.
+   */
+  public Column column(int i) {
+    return (i < this.columns.length) ? this.columns[i] : null;
+  }
+
+  /**
+   * Number of sheet columns up to the last one with a variable.
+   */
+  public int size() {
+    return this.columns.length;
+  }
+
+  private static boolean isDate(String v) {
+    return v.endsWith("DATE") || v.endsWith("DAT");
+  }
+
+  public static final class Column {
+    private final String variable;
+    private final String path;
+    private final boolean date;
+    private final boolean rootField;
+    private final boolean linkage;
+
+    private Column(String variable, String path, boolean date, boolean rootField, boolean linkage) {
+      this.variable = variable;
+      this.path = path;
+      this.date = date;
+      this.rootField = rootField;
+      this.linkage = linkage;
+    }
+
+    public String variable() { return this.variable; }
+
+    /**
+     * ACE path of the variable, {@code null} when it is not a known ACE variable.
+     */
+    public String path() { return this.path; }
+
+    public boolean isDate() { return this.date; }
+
+    public boolean isRootField() { return this.rootField; }
+
+    public boolean isLinkage() { return this.linkage; }
+  }
+}
@@ -0,0 +1,71 @@
+package org.agmip.translators.excel.api;
+
+import java.util.Arrays;
+
+/**
+ * Values of the index columns of a component. The hash is computed once, so the key
+ * is cheap to use in the hash joins of the graph walk.
+ */
+public final class CompositeKey {
+  private final KeyDescriptor descriptor;
+  private final String[] values;
+  private final int hash;
+
+  CompositeKey(KeyDescriptor descriptor, String[] values) {
+    this.descriptor = descriptor;
+    this.values = values;
+    this.hash = 31 * descriptor.columnsHash() + Arrays.hashCode(values);
+  }
+
+  /**
+   * Rough heap footprint, used by the caches to stay within their budget.
+   */
+  public long weight() {
+    long w = 32L + 16L + 4L * values.length;
+    for (String v : values) {
+      if (null != v) {
+        w += 40L + 2L * v.length();
+      }
+    }
+    return w;
+  }
+
+  int size() {
+    return this.values.length;
+  }
+
+  String column(int i) {
+    return this.descriptor.column(i);
+  }
+
+  String value(int i) {
+    return this.values[i];
+  }
+
+  @Override
+  public int hashCode() {
+    return this.hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (! (o instanceof CompositeKey)) return false;
+    CompositeKey other = (CompositeKey) o;
+    return this.hash == other.hash
+        && Arrays.equals(this.values, other.values)
+        && this.descriptor.sameColumns(other.descriptor);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        out.append(",");
+      }
+      out.append(descriptor.column(i)).append(":").append(values[i]);
+    }
+    return out.toString();
+  }
+}
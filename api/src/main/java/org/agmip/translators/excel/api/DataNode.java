@@ -5,7 +5,6 @@ import java.io.InputStream;
 import java.util.*;
 
 import org.agmip.ace.AceDataset;
-import org.agmip.ace.lookup.LookupPath;
 import org.agmip.translators.excel.api.handler.TranslationHandler;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
@@ -27,11 +26,15 @@ public class DataNode {
   private List<String> linkages;
   private List<DataNode> children;
   private List<String> variables;
+  private List<Integer> variableColumns;
   private XSSFReader reader;
   private boolean assigned;
   private String indexes;
   private XMLReader parser;
   private String nodePath;
+  private SheetData data;
+  private KeyDescriptor key;
+  private ColumnMetadata columns;
 
   public DataNode(String id, String name, XSSFReader reader) {
     this.id = id;
@@ -41,6 +44,7 @@ public class DataNode {
     this.linkages = new ArrayList<>();
     this.children = new ArrayList<>();
     this.variables = new ArrayList<>(50);
+    this.variableColumns = new ArrayList<>(50);
     this.rootField = Optional.empty();
     this.defines = Optional.empty();
     this.assigned = false;
@@ -78,6 +82,7 @@ public class DataNode {
         this.linkages.add(l);
       }
     }
+    this.columns = null;
   }
 
   public List<String> linkages() {
@@ -120,11 +125,28 @@ public class DataNode {
 
   public DataNode parent() { return this.parent; }
 
+  /**
+   * Adds a variable in the column after the last one.
+   */
   public void addVariable(String v) {
+    int size = this.variableColumns.size();
+    addVariable((size == 0) ? 0 : this.variableColumns.get(size - 1) + 1, v);
+  }
+
+  /**
+   * Adds the variable of a zero-based sheet column.
+   */
+  public void addVariable(int column, String v) {
     String cleaned = Util.standardizeVariable(v);
     this.variables.add(cleaned);
+    this.variableColumns.add(column);
+    this.columns = null;
   }
 
+  public void data(SheetData d) { this.data = d; }
+
+  public SheetData data() { return this.data; }
+
   public void assign() { this.assigned = true; }
 
   public boolean isAssigned() { return this.assigned; }
@@ -155,14 +177,61 @@ public class DataNode {
     return this.variables;
   }
 
-  public void indexes(String i) { this.indexes = i; }
+  public void indexes(String i) {
+    this.indexes = i;
+    this.key = null;
+  }
 
   public String indexes() { return this.indexes; }
 
+  /**
+   * Join key descriptor of the current indexes, compiled on first use.
+   */
+  public KeyDescriptor key() {
+    KeyDescriptor k = this.key;
+    if (null == k) {
+      k = KeyDescriptor.compile(this.indexes);
+      this.key = k;
+    }
+    return k;
+  }
+
+  /**
+   * Metadata of the variable columns, built on first use from the current variables and
+   * linkages.
+   */
+  public ColumnMetadata columns() {
+    ColumnMetadata c = this.columns;
+    if (null == c) {
+      c = ColumnMetadata.of(this.variables, this.variableColumns, this.linkages);
+      this.columns = c;
+    }
+    return c;
+  }
+
   public String lastIndex() {
     return Util.lastEntry(this.indexes);
   }
 
+  /**
+   * Makes the structure of this node and of everything below it read-only.
+   */
+  void freeze(Set<DataNode> visited) {
+    if (! visited.add(this)) return;
+    this.references = Collections.unmodifiableList(new ArrayList<>(this.references));
+    this.linkages = Collections.unmodifiableList(new ArrayList<>(this.linkages));
+    this.children = Collections.unmodifiableList(new ArrayList<>(this.children));
+    this.variables = Collections.unmodifiableList(new ArrayList<>(this.variables));
+    this.variableColumns = Collections.unmodifiableList(new ArrayList<>(this.variableColumns));
+    this.columns = ColumnMetadata.of(this.variables, this.variableColumns, this.linkages);
+    for (DataNode ref : this.references) {
+      ref.freeze(visited);
+    }
+    for (DataNode c : this.children) {
+      c.freeze(visited);
+    }
+  }
+
   public void setPaths() throws Exception {
     this.determinePaths();
     for(DataNode ref : this.references) {
@@ -214,28 +283,28 @@ public class DataNode {
       return;
     }
     List<String> determinator = new ArrayList<>();
-    for(String var: this.variables()) {
-      if (Util.ROOT_FIELDS.contains(var) && ! this.isRoot()) {
+    ColumnMetadata columns = this.columns();
+    for(int i = 0; i < columns.size(); i++) {
+      ColumnMetadata.Column col = columns.column(i);
+      if (null == col) continue;
+      String var = col.variable();
+      if (col.isRootField() && ! this.isRoot()) {
         //LOG.info("Skipping root var: {}", var);
-      } else if(this.linkages().contains(var)) {
+      } else if(col.isLinkage()) {
         //LOG.info("Skipping reference var: {} ", var);
       } else {
-        String lookup = LookupPath.INSTANCE.getPath(var);
-//                LOG.info("{} !! {}", var, lookup);
+        String lookup = col.path();
         if (null != lookup) {
           if (lookup.startsWith(",")) {
             lookup = lookup.substring(1);
           } else if (lookup.equals((""))) {
             lookup = "management";
           }
-          if (! this.references().contains(var)) {
-            if (var.endsWith("DAT") || var.endsWith("DATE")) {
-            } else {
-              LOG.info("Wanting to add {} because of {}", lookup, var);
-              if (!determinator.contains(lookup)) {
-                LOG.info("Adding {} because of {}", lookup, var);
-                determinator.add(lookup);
-              }
+          if (! col.isDate()) {
+            LOG.info("Wanting to add {} because of {}", lookup, var);
+            if (!determinator.contains(lookup)) {
+              LOG.info("Adding {} because of {}", lookup, var);
+              determinator.add(lookup);
             }
           }
         }
@@ -258,4 +327,8 @@ public class DataNode {
   public String path() {
     return this.nodePath;
   }
+
+  void path(String p) {
+    this.nodePath = p;
+  }
 }
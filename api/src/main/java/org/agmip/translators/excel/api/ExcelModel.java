@@ -1,13 +1,17 @@
 package org.agmip.translators.excel.api;
 
 import org.agmip.ace.*;
-import org.agmip.ace.util.AceFunctions;
 import org.agmip.translators.excel.api.handler.*;
+import org.agmip.translators.excel.api.io.ByteBufferChannel;
+import org.agmip.translators.excel.api.io.ChannelZipSource;
+import org.agmip.translators.excel.api.io.CountingInputStream;
+import org.agmip.translators.excel.api.io.DelimitedReader;
+import org.agmip.translators.excel.api.metrics.TranslationMetrics;
+import org.agmip.translators.excel.api.metrics.TranslationMetrics.Phase;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.model.SharedStringsTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.ContentHandler;
@@ -15,46 +19,225 @@ import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
-import javax.xml.soap.Node;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-public class ExcelModel {
+public class ExcelModel implements AutoCloseable {
   public static final Logger LOG = LoggerFactory.getLogger(ExcelModel.class);
+  private static final String SHEET_ORDER = "sheets.txt";
   private final OPCPackage pkg;
   private final XSSFReader reader;
-  private final SharedStringsTable sst;
+  private final Path delimited;
+  private SharedStrings sst;
   private final XMLReader parser;
+  private final WorksheetScanner scanner = new WorksheetScanner();
   private final RootedGraph graph;
+  private final TranslationCache translations;
+  private long referenceLimit;
+  private ExecutorService executor;
+  private int pipelineDepth = 0;
+  private final List<DataNode> sheets = new ArrayList<>();
+  private boolean date1904;
+  private SharedStrings.Storage stringStorage = SharedStrings.Storage.HEAP;
+  private int sampleLimit = FirstPassDataHandler.DEFAULT_SAMPLE_LIMIT;
+  private TranslationPlanCache planCache;
+  private TranslationPlan plan;
+  private final TranslationMetrics metrics = new TranslationMetrics();
 
+  /**
+   * Opens a workbook, or a directory holding one delimited file per sheet. Delimited
+   * files are named like their sheet, with a {@code .csv} extension for comma separated
+   * values or {@code .tsv} or {@code .tab} for tab separated values. The sheets are taken
+   * in the order of the names listed in a {@code sheets.txt} file of the directory, as
+   * inference depends on the workbook order, and in file name order otherwise.
+   */
   public ExcelModel(Path file) throws Exception {
-    pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
-    reader = new XSSFReader(pkg);
-    sst = reader.getSharedStringsTable();
-    parser = XMLReaderFactory.createXMLReader();
+    this(Files.isDirectory(file) ? null : OPCPackage.open(file.toFile(), PackageAccess.READ),
+        Files.isDirectory(file) ? file : null);
+  }
+
+  /**
+   * Opens a workbook held in memory. The array is read in place and must not change
+   * while the model is open.
+   */
+  public ExcelModel(byte[] workbook) throws Exception {
+    this(ByteBuffer.wrap(workbook));
+  }
+
+  /**
+   * Opens a workbook from the remaining bytes of a buffer, which is read in place and
+   * must not change while the model is open.
+   */
+  public ExcelModel(ByteBuffer workbook) throws Exception {
+    this(new ByteBufferChannel(workbook));
+  }
+
+  /**
+   * Opens a workbook read through a channel, locating its parts from the zip central
+   * directory. The channel is closed with the model.
+   */
+  public ExcelModel(SeekableByteChannel workbook) throws Exception {
+    this(open(workbook), null);
+  }
+
+  private ExcelModel(OPCPackage pkg, Path delimited) throws Exception {
+    this.pkg = pkg;
+    try {
+      this.reader = (null == pkg) ? null : new XSSFReader(pkg);
+      parser = XMLReaderFactory.createXMLReader();
+    } catch (Exception ex) {
+      // The package was opened for this model, which the caller never gets to close
+      if (null != pkg) {
+        pkg.revert();
+      }
+      throw ex;
+    }
+    this.delimited = delimited;
     this.graph = new RootedGraph();
+    this.translations = new TranslationCache(Runtime.getRuntime().maxMemory() / 4);
+    this.referenceLimit = Runtime.getRuntime().maxMemory() / 8;
+  }
+
+  private static OPCPackage open(SeekableByteChannel channel) throws Exception {
+    ChannelZipSource source;
+    try {
+      source = new ChannelZipSource(channel);
+    } catch (Exception ex) {
+      channel.close();
+      throw ex;
+    }
+    try {
+      return OPCPackage.open(source);
+    } catch (Exception ex) {
+      source.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Sets the memory budget, in bytes, of the translated sheets kept for the duration
+   * of {@link #run()}, counted as their converted dates and their keys. Sheets that do
+   * not fit are translated again each time a root needs them.
+   */
+  public void translationCacheLimit(long bytes) {
+    this.translations.limit(bytes);
+  }
+
+  /**
+   * Sets the memory budget, in bytes, of the reference rows held for the walk of a root.
+   * Rows past it are spilled to a temp file.
+   */
+  public void referenceMemoryLimit(long bytes) {
+    this.referenceLimit = bytes;
+  }
+
+  /**
+   * Scans and translates independent sheets concurrently on the given executor. Each
+   * task uses its own parser and handlers; the order of the results is not affected.
+   * The executor is not shut down by the model.
+   */
+  public void executor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Sets how many roots each stage of {@link #run(AceSink)} may get ahead of the next.
+   * Sheets are decoded into components on one thread, merged into experiments, soils
+   * and weather stations on a second, and handed to the sink on the calling thread. With
+   * {@code 0}, the default, the three run one after the other on the calling thread.
+   *
+   * Pipelining is not free: each run starts two more threads, and up to
+   * {@code 2 * roots + 3} roots are held at once instead of one, the decoded components
+   * and merged results queued between the stages plus the one each stage is working on.
+   * Memory therefore grows with the depth times the size of the largest root.
+   */
+  public void pipelineDepth(int roots) {
+    this.pipelineDepth = roots;
+  }
+
+  /**
+   * Selects how the shared strings table is held once {@link #init()} decodes it. Use
+   * {@link SharedStrings.Storage#COMPACT} or {@link SharedStrings.Storage#MAPPED} for
+   * workbooks with very large string tables.
+   */
+  public void sharedStrings(SharedStrings.Storage storage) {
+    this.stringStorage = storage;
+  }
+
+  /**
+   * Caps the number of data rows of each worksheet {@link #init()} reads and scans for
+   * duplicate index values while inferring the index columns. The rest of a sheet is
+   * only read when {@link #run()} translates it.
+   */
+  public void firstPassSampleLimit(int rows) {
+    this.sampleLimit = rows;
+  }
+
+  /**
+   * Looks up the {@link TranslationPlan} of the workbook template in the cache before
+   * inferring it, and stores newly inferred plans there.
+   */
+  public void planCache(TranslationPlanCache cache) {
+    this.planCache = cache;
+  }
+
+  /**
+   * Plan inferred or reused by {@link #init()}.
+   */
+  public TranslationPlan plan() {
+    return this.plan;
+  }
+
+  /**
+   * Timings and counters of {@link #init()} and {@link #run()} so far.
+   */
+  public TranslationMetrics metrics() {
+    return this.metrics;
   }
 
   public void init() throws Exception {
-    try (InputStream wkb = reader.getWorkbookData()) {
-      InputSource source = new InputSource(wkb);
-      SheetHandler handler = new SheetHandler(this.graph, this.sst, this.reader);
-      parser.setContentHandler(handler);
-      parser.parse(source);
+    if (null == delimited) {
+      scanWorkbook();
+    } else {
+      scanDelimited();
     }
-    for (DataNode n: graph.unassigned()) {
-      LOG.info("Node with [{}] {}", n.id(), n.name());
-      try (InputStream stream = reader.getSheet(n.id())) {
-        VariableHandler vh = new VariableHandler(n, sst);
-        parser.setContentHandler(vh);
-        InputSource source = new InputSource(stream);
-        parser.parse(source);
+    sheets.addAll(graph.unassigned());
+    List<DataNode> nodes = new ArrayList<>(graph.unassigned());
+    String fingerprint = fingerprint(nodes);
+    TranslationPlan cached = (null == planCache) ? null : planCache.load(fingerprint);
+    if (null != cached) {
+      metrics.planCacheHit();
+      LOG.info("Reusing translation plan {}", fingerprint);
+      TranslationMetrics.Timer t = metrics.time(Phase.GRAPH_BUILD);
+      try {
+        cached.apply(nodes, graph);
+      } finally {
+        t.close();
       }
+      this.plan = cached;
+      return;
+    }
+    if (null != planCache) {
+      metrics.planCacheMiss();
     }
+    infer();
+    this.plan = TranslationPlan.of(fingerprint, nodes, graph);
+    if (null != planCache) {
+      planCache.store(this.plan);
+    }
+  }
+
+  private void infer() throws Exception {
     List<String> temp = new ArrayList<>(50);
     List<String> dups = new ArrayList<>();
     List<String> defined = new ArrayList<>();
@@ -75,28 +258,37 @@ public class ExcelModel {
 
     for (DataNode n: graph.unassigned()) {
       LOG.info("Node {} has {} potential index(es)", n.name(), numIndexDups(dups, n.variables()));
-      try (InputStream stream = reader.getSheet(n.id())) {
-        int indexColumns = numIndexDups(dups, n.variables());
-        FirstPassDataHandler fpdh = new FirstPassDataHandler(n, indexColumns, defined, sst, reader);
-        parser.setContentHandler(fpdh);
-        InputSource source = new InputSource(stream);
-        parser.parse(source);
-        if (n.doesDefine()) {
-          String tempDefine = n.defines().get();
-          String d;
-          if (tempDefine.contains(",")) {
-            d = tempDefine.substring(tempDefine.lastIndexOf(",")+1);
-          } else {
-            d = tempDefine;
-          }
-          defined.add(d);
-          if (Util.ROOT_FIELDS.contains(n.defines().get())) {
-            n.root(n.defines().get());
-          }
+      int indexColumns = numIndexDups(dups, n.variables());
+      try (TranslationMetrics.Timer t = metrics.time(Phase.FIRST_PASS, n.name())) {
+        FirstPassDataHandler fpdh = new FirstPassDataHandler(n, indexColumns, defined, sst, sampleLimit);
+        n.data().replay(fpdh);
+        t.rows(n.data().size());
+      }
+      if (n.doesDefine()) {
+        String tempDefine = n.defines().get();
+        String d;
+        if (tempDefine.contains(",")) {
+          d = tempDefine.substring(tempDefine.lastIndexOf(",")+1);
+        } else {
+          d = tempDefine;
+        }
+        defined.add(d);
+        if (Util.ROOT_FIELDS.contains(n.defines().get())) {
+          n.root(n.defines().get());
         }
       }
     }
 
+    TranslationMetrics.Timer t = metrics.time(Phase.GRAPH_BUILD);
+    try {
+      defineRemaining(dups, defined);
+      graph.build();
+    } finally {
+      t.close();
+    }
+  }
+
+  private void defineRemaining(List<String> dups, List<String> defined) {
     dups.removeAll(defined);
 
     // Try to define the remaining duplicates
@@ -120,69 +312,332 @@ public class ExcelModel {
     for (DataNode n: graph.unassigned()) {
       LOG.info("{} {}", n.name(), n.defines());
     }
-    graph.build();
   }
 
-  public AceDataset run() throws Exception {
-    AceDataset ds = new AceDataset();
-    for(DataNode root: graph.roots()) {
-      List<AceComponent> results = step(ds, root, null, new HashMap<>());
-      LOG.info("Walk path: {}", root.path());
-      switch (root.path()) {
-        case "management":
-          for (AceComponent c: results) {
-            ds.addExperiment(c.getRawComponent());
-          }
-          break;
-        case "weather":
-          for (AceComponent c: results) {
-            ds.addWeather(c.getRawComponent());
-          }
-          break;
-        case "soil":
-          for (AceComponent c: results) {
-            ds.addSoil(c.getRawComponent());
-          }
-          break;
+  private void scanWorkbook() throws Exception {
+    try (TranslationMetrics.Timer t = metrics.time(Phase.WORKBOOK_SCAN)) {
+      InputStream data = reader.getSharedStringsData();
+      try (CountingInputStream strings = (null == data) ? null : new CountingInputStream(data)) {
+        sst = SharedStrings.load(strings, stringStorage);
+        if (null != strings) t.bytesInflated(strings.count());
+      }
+      try (CountingInputStream wkb = new CountingInputStream(reader.getWorkbookData())) {
+        InputSource source = new InputSource(wkb);
+        SheetHandler handler = new SheetHandler(this.graph, this.reader);
+        parser.setContentHandler(handler);
+        parser.parse(source);
+        date1904 = handler.date1904();
+        t.bytesInflated(wkb.count());
+      }
+    }
+    forEachNode(graph.unassigned(), n -> {
+      LOG.info("Node with [{}] {}", n.id(), n.name());
+      try (TranslationMetrics.Timer t = metrics.time(Phase.VARIABLE_SCAN, n.name());
+           CountingInputStream stream = new CountingInputStream(sheet(n))) {
+        WorksheetScanner s = (null == executor) ? scanner : new WorksheetScanner();
+        s.scan(stream, new IngestionHandler(n, sst, sampleLimit));
+        metrics.parsePass(n.name());
+        t.rows(n.data().size()).cells(n.data().cells()).bytesInflated(stream.count());
+      }
+    });
+  }
+
+  private static String sheetName(Path file) {
+    String fileName = file.getFileName().toString();
+    return fileName.substring(0, fileName.lastIndexOf('.'));
+  }
+
+  /**
+   * Reads the sheets of a directory of delimited files, the counterpart of the workbook
+   * and variable scans of a workbook.
+   */
+  private void scanDelimited() throws Exception {
+    TranslationMetrics.Timer scan = metrics.time(Phase.WORKBOOK_SCAN);
+    try {
+      sst = SharedStrings.EMPTY;
+      List<Path> files = new ArrayList<>();
+      try (DirectoryStream<Path> dir = Files.newDirectoryStream(delimited,
+          p -> Files.isRegularFile(p) && DelimitedReader.isDelimited(p.getFileName().toString()))) {
+        for (Path p: dir) {
+          files.add(p);
+        }
+      }
+      Collections.sort(files);
+      Path order = delimited.resolve(SHEET_ORDER);
+      if (Files.isRegularFile(order)) {
+        final List<String> names = new ArrayList<>();
+        for (String line: Files.readAllLines(order, StandardCharsets.UTF_8)) {
+          if (! line.trim().isEmpty()) names.add(line.trim());
+        }
+        files.sort(Comparator.comparingInt(p -> {
+          int i = names.indexOf(sheetName(p));
+          return (i < 0) ? Integer.MAX_VALUE : i;
+        }));
+      }
+      for (Path p: files) {
+        String name = sheetName(p);
+        if (name.startsWith("DOC_")) continue;
+        graph.addNode(new DataNode(p.getFileName().toString(), name, null));
       }
+    } finally {
+      scan.close();
     }
+    forEachNode(graph.unassigned(), n -> {
+      LOG.info("Node with [{}] {}", n.id(), n.name());
+      try (TranslationMetrics.Timer t = metrics.time(Phase.VARIABLE_SCAN, n.name())) {
+        IngestionHandler ih = new IngestionHandler(n, sst);
+        DelimitedReader in = new DelimitedReader(DelimitedReader.delimiterOf(n.id()));
+        long bytes = in.read(delimited.resolve(n.id()), ih::addRow);
+        n.data().complete(true);
+        metrics.parsePass(n.name());
+        t.rows(n.data().size()).cells(n.data().cells()).bytesInflated(bytes);
+      }
+    });
+  }
+
+  /**
+   * Number of data rows, header rows excluded, captured from the workbook so far.
+   * {@link #init()} only reads the header and the first pass sample of each worksheet;
+   * {@link #run()} reads the rest of the sheets it translates.
+   */
+  public long rows() {
+    long rows = 0L;
+    for (DataNode n: sheets) {
+      rows += Math.max(0, n.data().size() - 1);
+    }
+    return rows;
+  }
+
+  /**
+   * Releases the workbook package and the file or channel under it, without writing
+   * anything back. Translated sheets still cached are dropped.
+   */
+  @Override
+  public void close() throws IOException {
+    translations.clear();
+    if (null != pkg) {
+      pkg.revert();
+    }
+  }
+
+  public AceDataset run() throws Exception {
+    final AceDataset ds = new AceDataset();
+    run(new AceSink() {
+      @Override
+      public void experiment(byte[] raw) throws IOException {
+        ds.addExperiment(raw);
+      }
+
+      @Override
+      public void weather(byte[] raw) throws IOException {
+        ds.addWeather(raw);
+      }
+
+      @Override
+      public void soil(byte[] raw) throws IOException {
+        ds.addSoil(raw);
+      }
+    });
     return ds;
   }
 
-  private List<AceComponent> step(AceDataset ds, DataNode node, List<AceComponent> translatedRoot, Map<String, List<AceComponent>> refs) throws IOException {
-    List<AceComponent> translated = translateNode(node);
-    if (refs.isEmpty()) {
-      refs = storeReferencesFor(node);
+  /**
+   * Walks the graph and hands every completed experiment, weather station and soil to
+   * the sink as soon as the walk of its root finishes, instead of collecting the whole
+   * workbook in an {@link AceDataset}.
+   */
+  public void run(AceSink sink) throws Exception {
+    translations.clear();
+    if (null != executor) {
+      Map<String, DataNode> nodes = new LinkedHashMap<>();
+      for (DataNode root: graph.roots()) {
+        collectNodes(root, nodes);
+      }
+      forEachNode(nodes.values(), this::translate);
+    }
+    if (pipelineDepth > 0 && graph.roots().size() > 1) {
+      runPipelined(sink);
+    } else {
+      for(DataNode root: graph.roots()) {
+        List<AceComponent> results = build(root, new HashMap<>());
+        try (TranslationMetrics.Timer t = metrics.time(Phase.OUTPUT, root.name())) {
+          emit(sink, root.path(), results);
+          t.rows(results.size());
+        }
+      }
+    }
+    translations.clear();
+  }
+
+  /**
+   * Decodes, merges and emits consecutive roots in three stages joined by bounded
+   * queues. Roots keep their order, and the sink is only called from this thread.
+   */
+  private void runPipelined(AceSink sink) throws Exception {
+    final StageQueue<Decoded> decoded = new StageQueue<>(pipelineDepth);
+    final StageQueue<Built> built = new StageQueue<>(pipelineDepth);
+    Thread decoder = stage("decode", null, decoded, () -> {
+      for (DataNode root: graph.roots()) {
+        decoded.put(new Decoded(root, decode(root)));
+      }
+    });
+    Thread builder = stage("build", decoded, built, () -> {
+      Decoded d;
+      while (null != (d = decoded.take())) {
+        built.put(new Built(d.root, build(d.root, d.components)));
+      }
+    });
+    try {
+      Built b;
+      while (null != (b = built.take())) {
+        try (TranslationMetrics.Timer t = metrics.time(Phase.OUTPUT, b.root.name())) {
+          emit(sink, b.root.path(), b.results);
+          t.rows(b.results.size());
+        }
+      }
+    } catch (Exception | Error e) {
+      decoded.cancel();
+      built.cancel();
+      throw e;
+    } finally {
+      decoder.join();
+      builder.join();
+    }
+  }
+
+  private Thread stage(String name, StageQueue<?> in, StageQueue<?> out, StageTask task) {
+    Thread t = new Thread(() -> {
+      try {
+        task.run();
+        out.close();
+      } catch (Throwable e) {
+        if (null != in) {
+          in.cancel();
+        }
+        out.fail(e);
+      }
+    }, "excel-" + name);
+    t.setDaemon(true);
+    t.start();
+    return t;
+  }
+
+  private interface StageTask {
+    void run() throws Exception;
+  }
+
+  /**
+   * Components of every node a walk of the root translates itself. References are only
+   * translated into the cache, they are grouped by key when the root is built.
+   */
+  private Map<String, List<AceComponent>> decode(DataNode root) throws IOException {
+    Map<String, List<AceComponent>> components = new HashMap<>();
+    Deque<DataNode> pending = new ArrayDeque<>();
+    pending.push(root);
+    while (! pending.isEmpty()) {
+      DataNode n = pending.pop();
+      components.put(n.id(), translateNode(n));
+      for (DataNode ref: n.references()) {
+        translate(ref);
+      }
+      for (DataNode c: n.children()) {
+        pending.push(c);
+      }
+    }
+    return components;
+  }
+
+  private List<AceComponent> build(DataNode root, Map<String, List<AceComponent>> decoded) throws IOException {
+    List<AceComponent> results;
+    try (ReferenceStore refs = new ReferenceStore(referenceLimit)) {
+      results = step(root, null, refs, decoded);
+    }
+    LOG.info("Walk path: {}", root.path());
+    return results;
+  }
+
+  private static class Decoded {
+    private final DataNode root;
+    private final Map<String, List<AceComponent>> components;
+
+    private Decoded(DataNode root, Map<String, List<AceComponent>> components) {
+      this.root = root;
+      this.components = components;
+    }
+  }
+
+  private static class Built {
+    private final DataNode root;
+    private final List<AceComponent> results;
+
+    private Built(DataNode root, List<AceComponent> results) {
+      this.root = root;
+      this.results = results;
+    }
+  }
+
+  private void emit(AceSink sink, String path, List<AceComponent> results) throws IOException {
+    switch (path) {
+      case "management":
+        for (AceComponent c: results) {
+          sink.experiment(c.getRawComponent());
+        }
+        break;
+      case "weather":
+        for (AceComponent c: results) {
+          sink.weather(c.getRawComponent());
+        }
+        break;
+      case "soil":
+        for (AceComponent c: results) {
+          sink.soil(c.getRawComponent());
+        }
+        break;
+    }
+  }
+
+  private List<AceComponent> step(DataNode node, List<AceComponent> translatedRoot, ReferenceStore refs,
+                                  Map<String, List<AceComponent>> decoded) throws IOException {
+    List<AceComponent> translated = decoded.remove(node.id());
+    if (null == translated) {
+      translated = translateNode(node);
     }
-    if (! node.isRoot()) {
-      translated = handleChildren(ds, translatedRoot, translated, refs, node);
+    ReferenceStore own = null;
+    if (refs.isEmpty()) {
+      own = storeReferencesFor(node);
+      refs = own;
     }
-    for(DataNode c: node.children()) {
-      translated = step(ds, c, translated, refs);
+    try {
+      if (! node.isRoot()) {
+        try (TranslationMetrics.Timer t = metrics.time(Phase.MERGE, node.name())) {
+          translated = handleChildren(translatedRoot, translated, refs, node);
+          t.rows(translated.size());
+        }
+      }
+      for(DataNode c: node.children()) {
+        translated = step(c, translated, refs, decoded);
+      }
+    } finally {
+      if (null != own) {
+        own.close();
+      }
     }
     return translated;
   }
 
-  private Map<String, List<AceComponent>> storeReferencesFor(DataNode node) throws IOException {
-    Map<String, List<AceComponent>>refs = new HashMap<>();
+  private ReferenceStore storeReferencesFor(DataNode node) throws IOException {
+    ReferenceStore refs = new ReferenceStore(referenceLimit);
     for(DataNode ref: node.references()) {
-      List<AceComponent> res = translateNode(ref);
-      for(AceComponent c : res) {
-        String refKey = generateReferenceKey(ref, c);
-        if (refs.containsKey(refKey)) {
-          List<AceComponent> lc = refs.get(refKey);
-          lc.add(c);
-        } else {
-          List<AceComponent> lc = new ArrayList<>();
-          lc.add(c);
-          refs.put(refKey, lc);
-        }
+      TranslationCache.Entry entry = translate(ref);
+      List<AceComponent> res = entry.components();
+      for(int i = 0; i < res.size(); i++) {
+        refs.add(entry.keys().get(i), res.get(i));
       }
     }
     return refs;
   }
 
-  private List<AceComponent> handleChildren(AceDataset ds, List<AceComponent> roots, List<AceComponent> children, Map<String, List<AceComponent>> refs, DataNode node) throws IOException {
+  private List<AceComponent> handleChildren(List<AceComponent> roots, List<AceComponent> children, ReferenceStore refs, DataNode node) throws IOException {
     List<AceComponent> results = new ArrayList<>();
     switch(Util.frontPath(node.path())) {
       case "weather":
@@ -210,14 +665,14 @@ public class ExcelModel {
     return results;
   }
 
-  private List<AceExperiment> handleExperiment(List<AceComponent> roots, List<AceComponent> children, Map<String, List<AceComponent>> refs, DataNode node) throws IOException {
+  private List<AceExperiment> handleExperiment(List<AceComponent> roots, List<AceComponent> children, ReferenceStore refs, DataNode node) throws IOException {
     List<AceExperiment> results = new ArrayList<>();
-    List<String> orderedKeys = new ArrayList<>();
-    Map<String, AceComponent> mappedRoots = new HashMap<>();
+    List<CompositeKey> orderedKeys = new ArrayList<>();
+    Map<CompositeKey, AceComponent> mappedRoots = new HashMap<>();
     boolean flatMerge = (node.parent().indexes().equals(node.indexes()));
     LOG.info("Flat merge: {}", flatMerge);
     for(AceComponent root: roots) {
-      String k = generateReferenceKey(node.parent(), root);
+      CompositeKey k = node.parent().key().keyOf(root);
       if (mappedRoots.containsKey(k)) {
         LOG.error("REFERENCE KEY EXISTS: {}", k);
       } else {
@@ -226,7 +681,7 @@ public class ExcelModel {
       }
     }
     for(AceComponent child: children) {
-      String k = generateReferenceKey(node.parent(), child);
+      CompositeKey k = node.parent().key().keyOf(child);
       if (mappedRoots.containsKey(k)) {
         if (flatMerge) {
           AceExperiment ex = new AceExperiment(mappedRoots.get(k).getRawComponent());
@@ -235,7 +690,7 @@ public class ExcelModel {
         } else {
           mergeComponents(mappedRoots.get(k), child);
           String newExname = child.getValueOr("EXNAME", "") + "_" + child.getValueOr("TRTNO", "");
-          LOG.info("NewEX: {}", newExname);
+          LOG.debug("NewEX: {}", newExname);
           if (! newExname.equals("_")) {
             child.update("EXNAME", newExname, true, true, false);
           }
@@ -249,19 +704,19 @@ public class ExcelModel {
       }
     }
     if (results.size() == 0) {
-      for(String k: orderedKeys) {
+      for(CompositeKey k: orderedKeys) {
         results.add(new AceExperiment(mappedRoots.get(k).getRawComponent()));
       }
     }
     return results;
   }
 
-  private List<AceSoil> handleSoil(List<AceComponent> roots, List<AceComponent> children, Map<String, List<AceComponent>> refs, DataNode node) throws IOException {
+  private List<AceSoil> handleSoil(List<AceComponent> roots, List<AceComponent> children, ReferenceStore refs, DataNode node) throws IOException {
     List<AceSoil> results = new ArrayList<>();
-    List<String> orderedKeys = new ArrayList<>();
-    Map<String, AceComponent> mappedRoots = new HashMap<>();
+    List<CompositeKey> orderedKeys = new ArrayList<>();
+    Map<CompositeKey, AceComponent> mappedRoots = new HashMap<>();
     for(AceComponent root: roots) {
-      String k = generateReferenceKey(node.parent(), root);
+      CompositeKey k = node.parent().key().keyOf(root);
       if (mappedRoots.containsKey(k)) {
         LOG.error("REFERENCE KEY EXISTS: {}", k);
       } else {
@@ -269,27 +724,26 @@ public class ExcelModel {
         orderedKeys.add(k);
       }
     }
-    for(AceComponent child: children) {
-      String k = generateReferenceKey(node.parent(), child);
-      if (mappedRoots.containsKey(k)) {
-        AceSoil s = new AceSoil(mappedRoots.get(k).getRawComponent());
+    Map<CompositeKey, List<AceComponent>> layers = groupByParent(node, children);
+    for(CompositeKey k : orderedKeys) {
+      AceSoil s = new AceSoil(mappedRoots.get(k).getRawComponent());
+      if (layers.containsKey(k)) {
         AceRecordCollection col = s.getSoilLayers();
-        col.add(new AceRecord(child.getRawComponent()));
-        mappedRoots.put(k, new AceComponent(s.rebuildComponent()));
+        for(AceComponent layer: layers.get(k)) {
+          col.add(new AceRecord(layer.getRawComponent()));
+        }
       }
-    }
-    for(String k : orderedKeys) {
-      results.add(new AceSoil(mappedRoots.get(k).getRawComponent()));
+      results.add(s);
     }
     return results;
   }
 
-  private List<AceWeather> handleWeather(List<AceComponent> roots, List<AceComponent> children, Map<String, List<AceComponent>> refs, DataNode node) throws IOException {
+  private List<AceWeather> handleWeather(List<AceComponent> roots, List<AceComponent> children, ReferenceStore refs, DataNode node) throws IOException {
     List<AceWeather> results = new ArrayList<>();
-    List<String> orderedKeys = new ArrayList<>();
-    Map<String, AceComponent> mappedRoots = new HashMap<>();
+    List<CompositeKey> orderedKeys = new ArrayList<>();
+    Map<CompositeKey, AceComponent> mappedRoots = new HashMap<>();
     for(AceComponent root: roots) {
-      String k = generateReferenceKey(node.parent(), root);
+      CompositeKey k = node.parent().key().keyOf(root);
       if (mappedRoots.containsKey(k)) {
         LOG.error("REFERENCE KEY EXISTS: {}", k);
       } else {
@@ -297,30 +751,47 @@ public class ExcelModel {
         orderedKeys.add(k);
       }
     }
-    for(AceComponent child: children) {
-      String k = generateReferenceKey(node.parent(), child);
-      if (mappedRoots.containsKey(k)) {
-        AceWeather w = new AceWeather(mappedRoots.get(k).getRawComponent());
+    Map<CompositeKey, List<AceComponent>> dailies = groupByParent(node, children);
+    for(CompositeKey k : orderedKeys) {
+      AceWeather w = new AceWeather(mappedRoots.get(k).getRawComponent());
+      if (dailies.containsKey(k)) {
         AceRecordCollection col = w.getDailyWeather();
-        col.add(new AceRecord(child.getRawComponent()));
-        mappedRoots.put(k, new AceComponent(w.rebuildComponent()));
+        for(AceComponent daily: dailies.get(k)) {
+          col.add(new AceRecord(daily.getRawComponent()));
+        }
       }
+      results.add(w);
     }
-    for(String k : orderedKeys) {
-      results.add(new AceWeather(mappedRoots.get(k).getRawComponent()));
-    } 
     return results;
   }
 
+  /**
+   * Buckets the child rows by the reference key of their parent, keeping the sheet
+   * order inside each bucket, so every parent component is rebuilt only once.
+   */
+  private Map<CompositeKey, List<AceComponent>> groupByParent(DataNode node, List<AceComponent> children) throws IOException {
+    Map<CompositeKey, List<AceComponent>> groups = new HashMap<>();
+    for(AceComponent child: children) {
+      CompositeKey k = node.parent().key().keyOf(child);
+      List<AceComponent> group = groups.get(k);
+      if (null == group) {
+        group = new ArrayList<>();
+        groups.put(k, group);
+      }
+      group.add(child);
+    }
+    return groups;
+  }
+
   private void mergeExChildren(AceComponent source, AceExperiment dest, DataNode node) throws IOException {
     switch(node.path()) {
       case "observed":
-        LOG.info("Merging observed data");
+        LOG.debug("Merging observed data");
         AceObservedData obs = dest.getObservedData();
         mergeComponents(source, obs);
         break;
       case "observed@timeSeries":
-        LOG.info("Merging observed timeseries data");
+        LOG.debug("Merging observed timeseries data");
         AceRecordCollection col = dest.getObservedData().getTimeseries();
         col.add(new AceRecord(source.getRawComponent()));
         break;
@@ -329,12 +800,12 @@ public class ExcelModel {
     }
   }
 
-  private void mergeExReferences(AceExperiment component, Map<String, List<AceComponent>> refs, DataNode node) throws IOException {
+  private void mergeExReferences(AceExperiment component, ReferenceStore refs, DataNode node) throws IOException {
     for(DataNode ref: node.references()) {
-      String refKey = generateReferenceKey(ref, component);
-      LOG.info("Reference Key Lookup: {} {}", refKey, refs.containsKey(refKey));
-      if (refs.containsKey(refKey)) {
-        List<AceComponent> references = refs.get(refKey);
+      CompositeKey refKey = ref.key().keyOf(component);
+      List<AceComponent> references = refs.get(refKey);
+      LOG.debug("Reference Key Lookup: {} {}", refKey, ! references.isEmpty());
+      if (! references.isEmpty()) {
         switch(ref.path()) {
           case "management":
             for(AceComponent r: references) {
@@ -402,20 +873,110 @@ public class ExcelModel {
   }
 
   private List<AceComponent> translateNode(DataNode node) throws IOException {
-    List<AceComponent> translated = new ArrayList<>();
-    try (InputStream stream = reader.getSheet(node.id())) {
-      InputSource source = new InputSource(stream);
-      TranslationHandler th = new TranslationHandler(node, translated, this.sst);
-      this.parser.setContentHandler(th);
-      this.parser.parse(source);
-    } catch (InvalidFormatException e) {
-      e.printStackTrace();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (Exception e) {
-      e.printStackTrace();
+    return translate(node).components();
+  }
+
+  private TranslationCache.Entry translate(DataNode node) throws IOException {
+    TranslationCache.Entry cached = translations.get(node.id());
+    if (null != cached) {
+      metrics.translationCacheHit();
+      return cached;
+    }
+    metrics.translationCacheMiss();
+    captureAll(node);
+    try (TranslationMetrics.Timer t = metrics.time(Phase.TRANSLATE, node.name())) {
+      TranslatedSheet translated = TranslatedSheet.of(node, this.date1904);
+      List<CompositeKey> keys = translated.keys(node.key());
+      t.rows(translated.size());
+      return translations.put(node, translated, keys);
+    }
+  }
+
+  /**
+   * Reads every row of a sheet that {@link #init()} only sampled.
+   */
+  private void captureAll(DataNode node) throws IOException {
+    synchronized (node) {
+      if (node.data().isComplete()) return;
+      TranslationMetrics.Timer t = metrics.time(Phase.CAPTURE, node.name());
+      try (CountingInputStream stream = new CountingInputStream(sheet(node))) {
+        new WorksheetScanner().scan(stream, new IngestionHandler(node, sst));
+        metrics.parsePass(node.name());
+        t.rows(node.data().size()).cells(node.data().cells()).bytesInflated(stream.count());
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException("Unable to read sheet " + node.name(), e);
+      } finally {
+        t.close();
+      }
+    }
+  }
+
+  private String fingerprint(List<DataNode> nodes) {
+    List<List<String>> headers = new ArrayList<>(nodes.size());
+    for (DataNode n: nodes) {
+      List<String> header = new ArrayList<>();
+      header.add(n.name());
+      for (String cell: n.data().header()) {
+        header.add((null == cell) ? "" : Util.standardizeVariable(cell));
+      }
+      headers.add(header);
+    }
+    return TranslationPlan.fingerprint(headers);
+  }
+
+  private InputStream sheet(DataNode node) throws Exception {
+    synchronized (reader) {
+      return reader.getSheet(node.id());
     }
-    return translated;
+  }
+
+  private void collectNodes(DataNode node, Map<String, DataNode> nodes) {
+    nodes.put(node.id(), node);
+    for (DataNode ref: node.references()) {
+      nodes.put(ref.id(), ref);
+    }
+    for (DataNode c: node.children()) {
+      collectNodes(c, nodes);
+    }
+  }
+
+  /**
+   * Runs the task for every node, on the configured executor when there is one. Waits
+   * for all of them and rethrows the first failure in node order.
+   */
+  private void forEachNode(Collection<DataNode> nodes, NodeTask task) throws Exception {
+    if (null == executor) {
+      for (DataNode n: nodes) {
+        task.apply(n);
+      }
+      return;
+    }
+    List<Future<Void>> pending = new ArrayList<>(nodes.size());
+    for (DataNode n: nodes) {
+      pending.add(executor.submit(() -> {
+        task.apply(n);
+        return null;
+      }));
+    }
+    Exception failure = null;
+    for (Future<Void> f: pending) {
+      try {
+        f.get();
+      } catch (ExecutionException e) {
+        if (null == failure) {
+          failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
+      }
+    }
+    if (null != failure) {
+      throw failure;
+    }
+  }
+
+  private interface NodeTask {
+    void apply(DataNode node) throws Exception;
   }
 
   private int numIndexDups(List<String> dups, List<String> search) {
@@ -430,40 +991,9 @@ public class ExcelModel {
     return n;
   }
 
-  private boolean matchNode(AceComponent component, DataNode node, Map<String, String> varMap) throws IOException {
-    for(String key: Arrays.asList(node.parent().indexes().split(","))) {
-      if (! matchComponent(key, component, varMap)) return false;
-    }
-    return true;
-  }
-
-  private boolean matchComponent(String key, AceComponent component, Map<String, String> varMap) throws IOException {
-    String cmp = component.getValueOr(key, "");
-    if (! cmp.equals(varMap.get(key))) {
-      return false;
-    }
-    return true;
-  }
-
   private void mergeComponents(AceComponent source, AceComponent dest) throws IOException {
     for (String k: source.keySet()) {
       dest.update(k, source.getValue(k), true, true, false);
     }
   }
-
-  private String generateReferenceKey(DataNode node, AceComponent c) throws IOException {
-    StringBuilder refKey = new StringBuilder();
-    for (String key: Arrays.asList(node.indexes().split(","))) {
-      refKey.append(key);
-      refKey.append(":");
-      refKey.append(c.getValue(key));
-      refKey.append(",");
-    }
-    return refKey.substring(0,refKey.length()-1);
-  }
-  
-  private void addEvent(AceExperiment e, AceComponent c) throws IOException {
-    AceEvent evt = new AceEvent(c.getRawComponent());
-    e.getEvents().asList().add(evt);
-  }
 }
@@ -0,0 +1,48 @@
+package org.agmip.translators.excel.api;
+
+import org.agmip.ace.AceComponent;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Index columns of a {@link DataNode}, split once, used to build the
+ * {@link CompositeKey}s that components are joined on.
+ */
+public class KeyDescriptor {
+  private final String[] columns;
+  private final int hash;
+
+  private KeyDescriptor(String[] columns) {
+    this.columns = columns;
+    this.hash = Arrays.hashCode(columns);
+  }
+
+  public static KeyDescriptor compile(String indexes) {
+    return new KeyDescriptor(indexes.split(","));
+  }
+
+  public CompositeKey keyOf(AceComponent c) throws IOException {
+    String[] values = new String[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      values[i] = c.getValue(columns[i]);
+    }
+    return new CompositeKey(this, values);
+  }
+
+  public int size() {
+    return this.columns.length;
+  }
+
+  String column(int i) {
+    return this.columns[i];
+  }
+
+  boolean sameColumns(KeyDescriptor other) {
+    return this == other || (this.hash == other.hash && Arrays.equals(this.columns, other.columns));
+  }
+
+  int columnsHash() {
+    return this.hash;
+  }
+}
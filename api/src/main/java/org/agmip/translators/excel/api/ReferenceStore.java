@@ -0,0 +1,219 @@
+package org.agmip.translators.excel.api;
+
+import org.agmip.ace.AceComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Translated reference rows grouped by their {@link CompositeKey}, for the walk of a
+ * root.
+ *
+ * Rows are kept on the heap until their estimated size reaches the memory limit. Later
+ * rows are appended to a temp file, and an open-addressing index in a direct buffer maps
+ * the hash of each key to the last record written for it; records of the same hash are
+ * chained through the file. {@link #get(CompositeKey)} reads both tiers and returns
+ * fresh components in the order the rows were added.
+ */
+public class ReferenceStore implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(ReferenceStore.class);
+  private static final long ROW_OVERHEAD = 64L;
+  private static final int SLOT = 12;
+  private static final int RECORD_HEADER = 12;
+  private final long memoryLimit;
+  private final Map<CompositeKey, List<byte[]>> memory;
+  private long memorySize;
+  private long rows;
+  private Path spill;
+  private FileChannel channel;
+  private long spillSize;
+  private ByteBuffer index;
+  private int indexCapacity;
+  private int indexEntries;
+
+  public ReferenceStore(long memoryLimit) {
+    this.memoryLimit = memoryLimit;
+    this.memory = new HashMap<>();
+  }
+
+  public void add(CompositeKey key, AceComponent component) throws IOException {
+    byte[] raw = component.getRawComponent();
+    rows++;
+    if (null == channel) {
+      List<byte[]> rows = memory.get(key);
+      long weight = raw.length + ROW_OVERHEAD + ((null == rows) ? key.weight() : 0L);
+      if (memorySize + weight <= memoryLimit) {
+        if (null == rows) {
+          rows = new ArrayList<>();
+          memory.put(key, rows);
+        }
+        rows.add(raw);
+        memorySize += weight;
+        return;
+      }
+      openSpill();
+    }
+    append(key, raw);
+  }
+
+  /**
+   * Rows added with the key, empty when there are none.
+   */
+  public List<AceComponent> get(CompositeKey key) throws IOException {
+    List<AceComponent> found = new ArrayList<>();
+    List<byte[]> inMemory = memory.get(key);
+    if (null != inMemory) {
+      for (byte[] raw : inMemory) {
+        found.add(new AceComponent(raw));
+      }
+    }
+    if (null != channel) {
+      long head = head(slotOf(key.hashCode()));
+      if (head >= 0) {
+        byte[] encoded = encode(key);
+        List<AceComponent> spilled = new ArrayList<>();
+        for (long offset = head; offset >= 0; ) {
+          ByteBuffer header = read(offset, RECORD_HEADER);
+          long next = header.getLong();
+          int keyLength = header.getInt();
+          ByteBuffer k = read(offset + RECORD_HEADER, keyLength);
+          if (k.equals(ByteBuffer.wrap(encoded))) {
+            int rawLength = read(offset + RECORD_HEADER + keyLength, 4).getInt();
+            spilled.add(new AceComponent(read(offset + RECORD_HEADER + keyLength + 4, rawLength).array()));
+          }
+          offset = next;
+        }
+        Collections.reverse(spilled);
+        found.addAll(spilled);
+      }
+    }
+    return found;
+  }
+
+  public boolean isEmpty() {
+    return rows == 0;
+  }
+
+  public boolean isSpilled() {
+    return null != channel;
+  }
+
+  @Override
+  public void close() throws IOException {
+    memory.clear();
+    index = null;
+    if (null != channel) {
+      channel.close();
+      channel = null;
+      Files.deleteIfExists(spill);
+    }
+  }
+
+  private void openSpill() throws IOException {
+    spill = Files.createTempFile("references", ".bin");
+    channel = FileChannel.open(spill, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    allocateIndex(1024);
+    LOG.info("Reference rows went over {} bytes, spilling to {}", memoryLimit, spill);
+  }
+
+  private void append(CompositeKey key, byte[] raw) throws IOException {
+    if (indexEntries * 2 >= indexCapacity) {
+      rehash();
+    }
+    int slot = slotOf(key.hashCode());
+    long previous = head(slot);
+    byte[] encoded = encode(key);
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + encoded.length + 4 + raw.length);
+    record.putLong(previous).putInt(encoded.length).put(encoded).putInt(raw.length).put(raw);
+    record.flip();
+    long offset = spillSize;
+    while (record.hasRemaining()) {
+      spillSize += channel.write(record, spillSize);
+    }
+    if (previous < 0) {
+      indexEntries++;
+    }
+    index.putInt(slot * SLOT, key.hashCode());
+    index.putLong(slot * SLOT + 4, offset + 1);
+  }
+
+  /**
+   * Slot of a hash: the one holding its chain, or the empty slot where it would go.
+   */
+  private int slotOf(int hash) {
+    int mask = indexCapacity - 1;
+    int slot = mix(hash) & mask;
+    while (index.getLong(slot * SLOT + 4) != 0L && index.getInt(slot * SLOT) != hash) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private long head(int slot) {
+    return index.getLong(slot * SLOT + 4) - 1;
+  }
+
+  private void rehash() {
+    ByteBuffer old = index;
+    int oldCapacity = indexCapacity;
+    allocateIndex(oldCapacity * 2);
+    for (int s = 0; s < oldCapacity; s++) {
+      long head = old.getLong(s * SLOT + 4);
+      if (head == 0L) continue;
+      int hash = old.getInt(s * SLOT);
+      int slot = slotOf(hash);
+      index.putInt(slot * SLOT, hash);
+      index.putLong(slot * SLOT + 4, head);
+    }
+  }
+
+  private void allocateIndex(int capacity) {
+    indexCapacity = capacity;
+    index = ByteBuffer.allocateDirect(capacity * SLOT);
+  }
+
+  private ByteBuffer read(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Truncated reference spill " + spill);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static byte[] encode(CompositeKey key) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(key.size());
+    for (int i = 0; i < key.size(); i++) {
+      out.writeUTF(key.column(i));
+      String v = key.value(i);
+      out.writeBoolean(null != v);
+      if (null != v) {
+        out.writeUTF(v);
+      }
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static int mix(int h) {
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h;
+  }
+}
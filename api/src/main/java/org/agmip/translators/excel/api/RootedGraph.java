@@ -3,20 +3,26 @@ package org.agmip.translators.excel.api;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-
+import java.util.*;
+
+/**
+ * Sheets of a workbook arranged as trees under their root sheets.
+ *
+ * {@link #build()} assigns children and references through maps keyed by the indexes,
+ * the head of the indexes and the variables of the nodes, rather than comparing every
+ * pair of nodes. Once built, the graph and its nodes are frozen so the walk can be shared
+ * by concurrent readers.
+ */
 public class RootedGraph {
   private static final Logger LOG = LoggerFactory.getLogger(RootedGraph.class);
   private List<DataNode> roots;
   private List<DataNode> unassigned;
-  private List<DataNode> temp;
+  private boolean built;
 
   public RootedGraph() {
     roots = new ArrayList<>();
-    unassigned = new CopyOnWriteArrayList<>();
-    temp = new ArrayList<>();
+    unassigned = new ArrayList<>();
+    built = false;
   }
 
   public List<DataNode> roots() {
@@ -24,6 +30,9 @@ public class RootedGraph {
   }
 
   public void addNode(DataNode node) {
+    if (built) {
+      throw new IllegalStateException("Cannot add " + node.name() + " to a built graph");
+    }
     this.unassigned.add(node);
   }
 
@@ -31,6 +40,10 @@ public class RootedGraph {
     return this.unassigned;
   }
 
+  public boolean isBuilt() {
+    return this.built;
+  }
+
   public void build() throws Exception {
     assignChildOnly();
     checkpoint();
@@ -50,6 +63,23 @@ public class RootedGraph {
       n.display(0);
       n.setPaths();
     }
+    freeze();
+  }
+
+  /**
+   * Builds the graph from roots and unassigned nodes arranged by a {@link TranslationPlan}
+   * instead of inferring them.
+   */
+  void restore(List<DataNode> roots, List<DataNode> unassigned) {
+    if (built) {
+      throw new IllegalStateException("Cannot restore a plan onto a built graph");
+    }
+    this.roots = new ArrayList<>(roots);
+    this.unassigned = new ArrayList<>(unassigned);
+    for (DataNode n : this.roots) {
+      n.display(0);
+    }
+    freeze();
   }
 
   private boolean preflight(DataNode base, DataNode check) {
@@ -75,30 +105,44 @@ public class RootedGraph {
   }
 
   private void assignReferences() {
+    Map<String, List<DataNode>> byVariable = new HashMap<>();
+    for (DataNode n: this.unassigned) {
+      for (String v: n.variables()) {
+        List<DataNode> nodes = byVariable.computeIfAbsent(v, k -> new ArrayList<>());
+        if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != n) {
+          nodes.add(n);
+        }
+      }
+    }
     for (DataNode base: this.unassigned) {
-      for (DataNode check: this.unassigned) {
+      if (!base.doesDefine() || null == base.indexes()) continue;
+      String lastIndex = base.lastIndex();
+      if (Util.ROOT_FIELDS.contains(lastIndex)) continue;
+      for (DataNode check: byVariable.getOrDefault(lastIndex, Collections.emptyList())) {
         if (!preflight(base, check)) continue;
-        if (check.variables().contains(base.lastIndex()) && ! Util.ROOT_FIELDS.contains(base.lastIndex())) {
-          LOG.info("{} references {}", check.name(), base.name());
-          check.addReference(base);
-          check.link(base.lastIndex());
-          base.assign();
-        }
+        LOG.info("{} references {}", check.name(), base.name());
+        check.addReference(base);
+        check.link(lastIndex);
+        base.assign();
       }
     }
   }
 
   private void assignChildOnly() {
+    Map<String, List<DataNode>> byIndexes = new HashMap<>();
+    for (DataNode n: this.unassigned) {
+      if (null == n.indexes()) continue;
+      byIndexes.computeIfAbsent(n.indexes(), k -> new ArrayList<>()).add(n);
+    }
     for (DataNode base: this.unassigned) {
-      for (DataNode check: this.unassigned) {
+      if (!base.doesDefine()) continue;
+      String currentDefinition = base.defines().get();
+      for (DataNode check: byIndexes.getOrDefault(currentDefinition, Collections.emptyList())) {
         if (!preflight(base, check)) continue;
-        String currentDefinition = base.defines().get();
-        if (check.indexes().equals(currentDefinition)) {
-          LOG.info("ChildOnly: {} is a child of {}", check.name(), base.name());
-          base.addChild(check);
-          check.link(currentDefinition);
-          check.assign();
-        }
+        LOG.info("ChildOnly: {} is a child of {}", check.name(), base.name());
+        base.addChild(check);
+        check.link(currentDefinition);
+        check.assign();
       }
     }
   }
@@ -116,21 +160,21 @@ public class RootedGraph {
   }
 
   private void assignNestedChildren() {
+    Map<String, List<DataNode>> byHeadIndex = new HashMap<>();
+    for (DataNode n: this.unassigned) {
+      if (null == n.indexes() || ! n.indexes().contains(",")) continue;
+      String headIndex = n.indexes().substring(0, n.indexes().lastIndexOf(","));
+      byHeadIndex.computeIfAbsent(headIndex, k -> new ArrayList<>()).add(n);
+    }
     for (DataNode base: this.unassigned) {
-      for (DataNode check: this.unassigned) {
+      if (!base.doesDefine()) continue;
+      String currentDefinition = base.defines().get();
+      for (DataNode check: byHeadIndex.getOrDefault(currentDefinition, Collections.emptyList())) {
         if (!preflight(base, check, false)) continue;
-        String currentDefinition = base.defines().get();
-        LOG.info("{}: {}", base.name(), currentDefinition);
-        if (check.indexes().contains(",")) {
-          String headIndex = check.indexes().substring(0, check.indexes().lastIndexOf(","));
-          LOG.info("Looking for index: {}", headIndex);
-          if (headIndex.equals(currentDefinition)) {
-            LOG.info("Nested child found: {} is a child of {}", check.name(), base.name());
-            base.addChild(check);
-            check.link(headIndex);
-            check.assign();
-          }
-        }
+        LOG.info("Nested child found: {} is a child of {}", check.name(), base.name());
+        base.addChild(check);
+        check.link(currentDefinition);
+        check.assign();
       }
     }
   }
@@ -144,10 +188,19 @@ public class RootedGraph {
   }
 
   private void clearAssigned() {
+    this.unassigned.removeIf(DataNode::isAssigned);
+  }
+
+  private void freeze() {
+    Set<DataNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (DataNode n: this.roots) {
+      n.freeze(visited);
+    }
     for (DataNode n: this.unassigned) {
-      if (n.isAssigned()) {
-        this.unassigned.remove(n);
-      }
+      n.freeze(visited);
     }
+    this.roots = Collections.unmodifiableList(new ArrayList<>(this.roots));
+    this.unassigned = Collections.unmodifiableList(new ArrayList<>(this.unassigned));
+    this.built = true;
   }
 }
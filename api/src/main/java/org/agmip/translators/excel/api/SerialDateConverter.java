@@ -0,0 +1,82 @@
+package org.agmip.translators.excel.api;
+
+import java.time.LocalDate;
+
+/**
+ * Turns Excel serial date numbers into ISO {@code yyyy-MM-dd} strings with epoch-day
+ * arithmetic, in the 1900 or the 1904 date system of the workbook.
+ *
+ * Dates are the same as {@code DateUtil.getJavaCalendar()}, with the time of day
+ * dropped. Like POI, the 1900 system never yields the fictitious 29 February 1900: its
+ * serial 60 maps to 1 March 1900, the same day as serial 61. The last few converted days
+ * are kept in a small direct-mapped cache since date columns usually hold runs of
+ * consecutive or repeated days. Instances are not thread-safe.
+ */
+public class SerialDateConverter {
+  private static final long DAY_MILLISECONDS = 24L * 60L * 60L * 1000L;
+  private static final long EPOCH_1900 = LocalDate.of(1899, 12, 30).toEpochDay();
+  private static final long EPOCH_1900_EARLY = LocalDate.of(1899, 12, 31).toEpochDay();
+  private static final long EPOCH_1904 = LocalDate.of(1904, 1, 1).toEpochDay();
+  private static final int CACHE_SIZE = 64;
+  private final boolean date1904;
+  private final long[] cachedDays = new long[CACHE_SIZE];
+  private final String[] cachedDates = new String[CACHE_SIZE];
+
+  public SerialDateConverter(boolean date1904) {
+    this.date1904 = date1904;
+  }
+
+  public boolean isDate1904() {
+    return this.date1904;
+  }
+
+  /**
+   * Converts a serial day number given as text. Values already written as ISO dates,
+   * as delimited exports usually hold them, are returned as they are.
+   */
+  public String toIsoDate(String serial) {
+    if (isIsoDate(serial)) {
+      return serial;
+    }
+    return toIsoDate(Double.parseDouble(serial));
+  }
+
+  public String toIsoDate(double serial) {
+    if (! (serial >= 0)) {
+      throw new IllegalArgumentException("Not a valid Excel date: " + serial);
+    }
+    long wholeDays = (long) Math.floor(serial);
+    long millis = (long) ((serial - wholeDays) * DAY_MILLISECONDS + 0.5);
+    if (millis >= DAY_MILLISECONDS) {
+      wholeDays++;
+    }
+    int slot = (int) (wholeDays & (CACHE_SIZE - 1));
+    String cached = cachedDates[slot];
+    if (null != cached && cachedDays[slot] == wholeDays) {
+      return cached;
+    }
+    String iso = LocalDate.ofEpochDay(epochDay(wholeDays)).toString();
+    cachedDays[slot] = wholeDays;
+    cachedDates[slot] = iso;
+    return iso;
+  }
+
+  private static boolean isIsoDate(String s) {
+    if (s.length() != 10 || s.charAt(4) != '-' || s.charAt(7) != '-') {
+      return false;
+    }
+    for (int i = 0; i < 10; i++) {
+      if (i == 4 || i == 7) continue;
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') return false;
+    }
+    return true;
+  }
+
+  private long epochDay(long wholeDays) {
+    if (date1904) {
+      return EPOCH_1904 + wholeDays;
+    }
+    return (wholeDays < 61) ? EPOCH_1900_EARLY + wholeDays : EPOCH_1900 + wholeDays;
+  }
+}
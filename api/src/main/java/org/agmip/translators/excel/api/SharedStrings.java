@@ -0,0 +1,204 @@
+package org.agmip.translators.excel.api;
+
+import org.agmip.translators.excel.api.handler.SharedStringsHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only shared strings table of a workbook.
+ *
+ * The {@code sharedStrings.xml} part is streamed once and every entry is decoded to its
+ * plain text up front, so a lookup is a single array access. {@link Storage#HEAP} keeps
+ * deduplicated {@code String}s; {@link Storage#COMPACT} and {@link Storage#MAPPED} keep
+ * the UTF-8 bytes of all entries in one heap array or in a memory-mapped temp file and
+ * decode an entry on lookup, for workbooks with millions of shared strings.
+ *
+ * Instances are immutable and can be shared by concurrent sheet handlers.
+ */
+public abstract class SharedStrings {
+  public enum Storage { HEAP, COMPACT, MAPPED }
+
+  public static final SharedStrings EMPTY = new ArrayStrings(new String[0]);
+
+  public abstract String get(int idx);
+
+  public abstract int size();
+
+  public static SharedStrings load(InputStream stream, Storage storage) throws Exception {
+    if (null == stream) {
+      return EMPTY;
+    }
+    final Builder builder = (storage == Storage.HEAP) ? new ArrayBuilder() : new CompactBuilder(storage == Storage.MAPPED);
+    try {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      XMLReader parser = factory.newSAXParser().getXMLReader();
+      parser.setContentHandler(new SharedStringsHandler(builder::add));
+      parser.parse(new InputSource(stream));
+      return builder.build();
+    } finally {
+      builder.discard();
+    }
+  }
+
+  private interface Builder {
+    void add(String s);
+
+    SharedStrings build() throws IOException;
+
+    void discard() throws IOException;
+  }
+
+  private static class ArrayBuilder implements Builder {
+    private final List<String> entries = new ArrayList<>();
+    private final Map<String, String> distinct = new HashMap<>();
+
+    @Override
+    public void add(String s) {
+      String existing = distinct.putIfAbsent(s, s);
+      entries.add((null == existing) ? s : existing);
+    }
+
+    @Override
+    public SharedStrings build() {
+      return new ArrayStrings(entries.toArray(new String[entries.size()]));
+    }
+
+    @Override
+    public void discard() {
+      distinct.clear();
+    }
+  }
+
+  private static class ArrayStrings extends SharedStrings {
+    private final String[] entries;
+
+    private ArrayStrings(String[] entries) {
+      this.entries = entries;
+    }
+
+    @Override
+    public String get(int idx) {
+      return entries[idx];
+    }
+
+    @Override
+    public int size() {
+      return entries.length;
+    }
+  }
+
+  private static class CompactBuilder implements Builder {
+    private final boolean mapped;
+    private final ByteArrayOutputStream heap;
+    private final Path spool;
+    private final OutputStream out;
+    private int[] offsets = new int[1024];
+    private int count = 0;
+    private long written = 0L;
+
+    private CompactBuilder(boolean mapped) throws IOException {
+      this.mapped = mapped;
+      if (mapped) {
+        this.heap = null;
+        this.spool = Files.createTempFile("shared-strings", ".bin");
+        this.out = new BufferedOutputStream(Files.newOutputStream(spool), 65536);
+      } else {
+        this.heap = new ByteArrayOutputStream(65536);
+        this.spool = null;
+        this.out = heap;
+      }
+    }
+
+    @Override
+    public void add(String s) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      if (written + bytes.length > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Shared strings table is larger than 2GB");
+      }
+      if (count + 1 >= offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      try {
+        out.write(bytes);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      offsets[count] = (int) written;
+      written += bytes.length;
+      count++;
+      offsets[count] = (int) written;
+    }
+
+    @Override
+    public SharedStrings build() throws IOException {
+      out.close();
+      int[] bounds = Arrays.copyOf(offsets, count + 1);
+      if (! mapped) {
+        return new CompactStrings(ByteBuffer.wrap(heap.toByteArray()), bounds, count);
+      }
+      try (FileChannel channel = FileChannel.open(spool, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, written);
+        return new CompactStrings(buffer, bounds, count);
+      }
+    }
+
+    @Override
+    public void discard() throws IOException {
+      out.close();
+      if (null != spool) {
+        try {
+          Files.deleteIfExists(spool);
+        } catch (IOException e) {
+          // Still mapped on platforms that do not allow it
+          spool.toFile().deleteOnExit();
+        }
+      }
+    }
+  }
+
+  private static class CompactStrings extends SharedStrings {
+    private final ByteBuffer bytes;
+    private final int[] offsets;
+    private final int count;
+
+    private CompactStrings(ByteBuffer bytes, int[] offsets, int count) {
+      this.bytes = bytes;
+      this.offsets = offsets;
+      this.count = count;
+    }
+
+    @Override
+    public String get(int idx) {
+      if (idx < 0 || idx >= count) {
+        throw new IndexOutOfBoundsException("Shared string " + idx + " of " + count);
+      }
+      int start = offsets[idx];
+      int length = offsets[idx + 1] - start;
+      if (bytes.hasArray()) {
+        return new String(bytes.array(), bytes.arrayOffset() + start, length, StandardCharsets.UTF_8);
+      }
+      byte[] dst = new byte[length];
+      ByteBuffer view = bytes.duplicate();
+      view.position(start);
+      view.get(dst);
+      return new String(dst, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+      return count;
+    }
+  }
+}
@@ -0,0 +1,380 @@
+package org.agmip.translators.excel.api;
+
+import org.agmip.translators.excel.api.handler.StopParsingException;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.*;
+
+/**
+ * Cell values of a single sheet, captured in one scan of the worksheet part.
+ *
+ * The first captured row is the header row. Values are stored as they appear in the
+ * {@code v} elements of the sheet, with shared strings already resolved, so the
+ * inference and translation handlers can be replayed over the data without inflating
+ * and tokenizing the sheet again.
+ *
+ * Data rows are held by column. A column stays {@link Type#NUMERIC} while every value
+ * is a plain decimal, kept as an unscaled {@code long} and its scale so the original
+ * text can be rebuilt exactly; the first other value turns it into a
+ * {@link Type#TEXT} column of dictionary codes. Blank cells before the last value of a
+ * row are kept as {@code null} so every value stays in its sheet column.
+ */
+public class SheetData {
+  public enum Type { NUMERIC, TEXT }
+
+  private static final AttributesImpl NO_ATTRIBUTES = new AttributesImpl();
+  private static final int MAX_DIGITS = 18;
+  private static final int BLANK = -1;
+  private static final long[] POW10 = new long[MAX_DIGITS + 1];
+  static {
+    POW10[0] = 1L;
+    for (int i = 1; i < POW10.length; i++) {
+      POW10[i] = POW10[i - 1] * 10L;
+    }
+  }
+
+  private String[] header;
+  private int size;
+  private long cells;
+  private int[] widths;
+  private Column[] columns;
+  private boolean complete;
+
+  public SheetData() {
+    this.size = 0;
+    this.widths = new int[16];
+    this.columns = new Column[0];
+  }
+
+  /**
+   * Adds a row of values indexed by column, {@code null} for blank cells.
+   */
+  public void addRow(String[] values) {
+    for (String v : values) {
+      if (null != v) cells++;
+    }
+    if (size == 0) {
+      this.header = values.clone();
+      this.size = 1;
+      return;
+    }
+    int row = size - 1;
+    if (row == widths.length) {
+      widths = Arrays.copyOf(widths, widths.length * 2);
+    }
+    widths[row] = values.length;
+    if (values.length > columns.length) {
+      columns = Arrays.copyOf(columns, values.length);
+    }
+    for (int c = 0; c < values.length; c++) {
+      Column column = columns[c];
+      if (null == column) {
+        column = new Column();
+        columns[c] = column;
+      }
+      if (! column.set(row, values[c])) {
+        column.toText(widths, row, c);
+        column.set(row, values[c]);
+      }
+    }
+    size++;
+  }
+
+  /**
+   * Number of captured rows, header row included.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Number of captured non-blank cells, header row included.
+   */
+  public long cells() {
+    return this.cells;
+  }
+
+  /**
+   * Whether every row of the sheet was captured, rather than its first rows only.
+   */
+  public boolean isComplete() {
+    return this.complete;
+  }
+
+  public void complete(boolean complete) {
+    this.complete = complete;
+  }
+
+  public String[] header() {
+    return (null == header) ? new String[0] : header.clone();
+  }
+
+  /**
+   * Number of columns of a row, up to its last non-blank cell; row 0 is the header row.
+   */
+  public int width(int row) {
+    if (row == 0) {
+      return (null == header) ? 0 : header.length;
+    }
+    return widths[row - 1];
+  }
+
+  /**
+   * Value of a cell, {@code null} when it is blank.
+   */
+  public String value(int row, int column) {
+    if (row == 0) {
+      return header[column];
+    }
+    checkCell(row, column);
+    return columns[column].get(row - 1);
+  }
+
+  public Type type(int column) {
+    return (column < columns.length && null != columns[column]) ? columns[column].type : Type.TEXT;
+  }
+
+  /**
+   * Value of a non-blank cell of a {@link Type#NUMERIC} column, as
+   * {@code Double.parseDouble()} would read its text.
+   */
+  public double number(int row, int column) {
+    checkCell(row, column);
+    Column c = columns[column];
+    if (c.type != Type.NUMERIC) {
+      return Double.parseDouble(c.get(row - 1));
+    }
+    return c.number(row - 1);
+  }
+
+  /**
+   * Feeds the captured rows to a handler as the equivalent {@code sheetData/row/c/v}
+   * SAX events, until the handler stops the replay with a {@link StopParsingException}.
+   */
+  public void replay(ContentHandler handler) throws SAXException {
+    try {
+      emit(handler);
+    } catch (StopParsingException e) {
+      // the handler has read all it needs
+    }
+  }
+
+  private void emit(ContentHandler handler) throws SAXException {
+    char[] buffer = new char[64];
+    AttributesImpl cell = new AttributesImpl();
+    cell.addAttribute("", "r", "r", "CDATA", "A");
+    String[] references = new String[0];
+    handler.startDocument();
+    handler.startElement("", "sheetData", "sheetData", NO_ATTRIBUTES);
+    for (int r = 0; r < size; r++) {
+      handler.startElement("", "row", "row", NO_ATTRIBUTES);
+      int width = width(r);
+      if (width > references.length) {
+        references = columnReferences(references, width);
+      }
+      for (int c = 0; c < width; c++) {
+        int length;
+        if (r > 0 && columns[c].type == Type.NUMERIC) {
+          length = columns[c].format(r - 1, buffer);
+        } else {
+          String value = value(r, c);
+          length = (null == value) ? -1 : value.length();
+          if (length > buffer.length) {
+            buffer = new char[length];
+          }
+          if (length > 0) {
+            value.getChars(0, length, buffer, 0);
+          }
+        }
+        if (length < 0) continue;
+        cell.setValue(0, references[c]);
+        handler.startElement("", "c", "c", cell);
+        handler.startElement("", "v", "v", NO_ATTRIBUTES);
+        handler.characters(buffer, 0, length);
+        handler.endElement("", "v", "v");
+        handler.endElement("", "c", "c");
+      }
+      handler.endElement("", "row", "row");
+    }
+    handler.endElement("", "sheetData", "sheetData");
+    handler.endDocument();
+  }
+
+  /**
+   * Column letters of the first {@code width} columns, extending those already built.
+   */
+  private static String[] columnReferences(String[] built, int width) {
+    String[] references = Arrays.copyOf(built, Math.max(width, built.length * 2));
+    for (int c = built.length; c < references.length; c++) {
+      StringBuilder letters = new StringBuilder(3);
+      for (int n = c + 1; n > 0; n = (n - 1) / 26) {
+        letters.insert(0, (char) ('A' + (n - 1) % 26));
+      }
+      references[c] = letters.toString();
+    }
+    return references;
+  }
+
+  private void checkCell(int row, int column) {
+    if (row <= 0 || row >= size || column >= widths[row - 1]) {
+      throw new IndexOutOfBoundsException("No cell " + column + " in row " + row);
+    }
+  }
+
+  private static class Column {
+    private Type type = Type.NUMERIC;
+    private long[] unscaled = new long[16];
+    private byte[] scales = new byte[16];
+    private int[] codes;
+    private List<String> dictionary;
+    private Map<String, Integer> dictionaryCodes;
+
+    private boolean set(int row, String value) {
+      if (type == Type.TEXT) {
+        if (row >= codes.length) {
+          codes = Arrays.copyOf(codes, Math.max(codes.length * 2, row + 1));
+        }
+        if (null == value) {
+          codes[row] = BLANK;
+          return true;
+        }
+        Integer code = dictionaryCodes.get(value);
+        if (null == code) {
+          code = dictionary.size();
+          dictionary.add(value);
+          dictionaryCodes.put(value, code);
+        }
+        codes[row] = code;
+        return true;
+      }
+      if (row >= unscaled.length) {
+        int capacity = Math.max(unscaled.length * 2, row + 1);
+        unscaled = Arrays.copyOf(unscaled, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+      }
+      if (null == value) {
+        scales[row] = BLANK;
+        return true;
+      }
+      return parseDecimal(value, row);
+    }
+
+    private String get(int row) {
+      if (type == Type.TEXT) {
+        return (codes[row] == BLANK) ? null : dictionary.get(codes[row]);
+      }
+      if (scales[row] == BLANK) {
+        return null;
+      }
+      char[] buffer = new char[MAX_DIGITS + 3];
+      return new String(buffer, 0, format(row, buffer));
+    }
+
+    private double number(int row) {
+      if (scales[row] == BLANK) {
+        throw new NumberFormatException("Blank cell");
+      }
+      long u = unscaled[row];
+      if (Math.abs(u) < (1L << 53)) {
+        // Both operands are exact, so the quotient is correctly rounded like parseDouble
+        return (double) u / (double) POW10[scales[row]];
+      }
+      return Double.parseDouble(get(row));
+    }
+
+    /**
+     * Dictionary-encodes the numeric values of rows {@code 0..rows-1} that have a cell
+     * in this column.
+     */
+    private void toText(int[] widths, int rows, int column) {
+      codes = new int[unscaled.length];
+      Arrays.fill(codes, BLANK);
+      dictionary = new ArrayList<>();
+      dictionaryCodes = new HashMap<>();
+      String[] values = new String[rows];
+      for (int r = 0; r < rows; r++) {
+        if (widths[r] > column) {
+          values[r] = get(r);
+        }
+      }
+      type = Type.TEXT;
+      unscaled = null;
+      scales = null;
+      for (int r = 0; r < rows; r++) {
+        if (null != values[r]) {
+          set(r, values[r]);
+        }
+      }
+    }
+
+    /**
+     * Accepts {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?} with at most 18 digits, the only
+     * forms whose text can be rebuilt from the unscaled value and the scale.
+     */
+    private boolean parseDecimal(String value, int row) {
+      int len = value.length();
+      int i = 0;
+      boolean negative = false;
+      if (len > 0 && value.charAt(0) == '-') {
+        negative = true;
+        i++;
+      }
+      int start = i;
+      long u = 0L;
+      int digits = 0;
+      int scale = -1;
+      for (; i < len; i++) {
+        char c = value.charAt(i);
+        if (c == '.') {
+          if (scale >= 0 || i == start) return false;
+          scale = 0;
+          continue;
+        }
+        if (c < '0' || c > '9') return false;
+        if (c == '0' && i == start && i + 1 < len && value.charAt(i + 1) != '.') return false;
+        if (++digits > MAX_DIGITS) return false;
+        u = u * 10L + (c - '0');
+        if (scale >= 0) scale++;
+      }
+      if (digits == 0 || scale == 0) return false;
+      if (negative && u == 0L) return false;
+      unscaled[row] = negative ? -u : u;
+      scales[row] = (byte) Math.max(scale, 0);
+      return true;
+    }
+
+    /**
+     * Writes the text of a numeric cell to the buffer and returns its length, -1 for a
+     * blank cell.
+     */
+    private int format(int row, char[] buffer) {
+      long u = unscaled[row];
+      int scale = scales[row];
+      if (scale == BLANK) {
+        return -1;
+      }
+      int pos = 0;
+      if (u < 0) {
+        buffer[pos++] = '-';
+        u = -u;
+      }
+      int digits = 1;
+      while (digits < MAX_DIGITS && u >= POW10[digits]) {
+        digits++;
+      }
+      int width = Math.max(digits, scale + 1);
+      int end = pos + width + ((scale > 0) ? 1 : 0);
+      int p = end;
+      for (int d = 0; d < width; d++) {
+        if (scale > 0 && d == scale) {
+          buffer[--p] = '.';
+        }
+        buffer[--p] = (char) ('0' + (u % 10L));
+        u /= 10L;
+      }
+      return end;
+    }
+  }
+}
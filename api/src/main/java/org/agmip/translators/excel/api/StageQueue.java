@@ -0,0 +1,75 @@
+package org.agmip.translators.excel.api;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-off between two stages of {@link ExcelModel#run(AceSink)}.
+ *
+ * {@link #put(Object)} blocks while the queue is full, so a stage never runs more than
+ * the capacity ahead of the next one. The producer ends the stream with {@link #close()}
+ * or {@link #fail(Throwable)}; {@link #take()} then returns {@code null} or rethrows the
+ * failure. A consumer that gives up calls {@link #cancel()}, which makes the blocked or
+ * next {@code put} of the producer throw a {@link CancellationException}.
+ */
+class StageQueue<T> {
+  private static final Object END = new Object();
+  private static final long POLL_MILLIS = 100L;
+  private final BlockingQueue<Object> queue;
+  private volatile Throwable failure;
+  private volatile boolean cancelled;
+
+  StageQueue(int capacity) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+  }
+
+  void put(T item) throws InterruptedException {
+    while (! queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+      if (cancelled) {
+        throw new CancellationException("Stage cancelled by its consumer");
+      }
+    }
+    if (cancelled) {
+      throw new CancellationException("Stage cancelled by its consumer");
+    }
+  }
+
+  void close() throws InterruptedException {
+    while (! cancelled && ! queue.offer(END, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+      // waiting for room for the end marker
+    }
+  }
+
+  void fail(Throwable t) {
+    failure = t;
+    queue.clear();
+    queue.offer(END);
+  }
+
+  void cancel() {
+    cancelled = true;
+    queue.clear();
+  }
+
+  /**
+   * Next item, or {@code null} once the producer closed the stream.
+   */
+  @SuppressWarnings("unchecked")
+  T take() throws Exception {
+    Object item = queue.take();
+    if (item != END) {
+      return (T) item;
+    }
+    queue.offer(END);
+    Throwable t = failure;
+    if (t instanceof Exception) {
+      throw (Exception) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    return null;
+  }
+}
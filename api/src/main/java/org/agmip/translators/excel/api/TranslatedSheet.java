@@ -0,0 +1,177 @@
+package org.agmip.translators.excel.api;
+
+import org.agmip.ace.AceComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Data rows of a {@link DataNode} as they translate to ACE, read straight from the
+ * columnar {@link SheetData} of the node.
+ *
+ * Date columns are converted once, as the rows are checked, and held next to the
+ * captured data; every other value is read from the node, and {@link AceComponent}s are
+ * built only when the components are asked for, so a translated sheet costs little more
+ * than its converted dates. Translation stops at the first row that cannot be
+ * translated, a row with a date that is not a serial day number, and keeps the rows
+ * before it. Blank cells and columns without a variable, such as {@code !} comment
+ * columns, are left out.
+ */
+public class TranslatedSheet {
+  private static final Logger LOG = LoggerFactory.getLogger(TranslatedSheet.class);
+  private final SheetData data;
+  private final ColumnMetadata columns;
+  private final String[][] dates;
+  private final int size;
+  private final Map<String, int[]> positions;
+
+  private TranslatedSheet(SheetData data, ColumnMetadata columns, String[][] dates, int size) {
+    this.data = data;
+    this.columns = columns;
+    this.dates = dates;
+    this.size = size;
+    this.positions = new HashMap<>();
+    for (int c = columns.size() - 1; c >= 0; c--) {
+      ColumnMetadata.Column column = columns.column(c);
+      if (null == column) continue;
+      String v = column.variable();
+      int[] p = positions.get(v);
+      p = (null == p) ? new int[] {c} : append(p, c);
+      positions.put(v, p);
+    }
+  }
+
+  public static TranslatedSheet of(DataNode node, boolean date1904) {
+    SheetData data = node.data();
+    ColumnMetadata columns = node.columns();
+    SerialDateConverter converter = new SerialDateConverter(date1904);
+    String[][] dates = new String[columns.size()][];
+    for (int c = 0; c < dates.length; c++) {
+      ColumnMetadata.Column column = columns.column(c);
+      if (null != column && column.isDate()) {
+        dates[c] = new String[data.size()];
+      }
+    }
+    int rows = 0;
+    for (int r = 1; r < data.size(); r++) {
+      String problem = convert(data, columns, converter, dates, r);
+      if (null != problem) {
+        LOG.error("{}: translation stopped at row {}, {}", node.name(), r, problem);
+        break;
+      }
+      rows++;
+    }
+    return new TranslatedSheet(data, columns, dates, rows);
+  }
+
+  /**
+   * Number of translated rows.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Rough heap footprint of the converted dates, the only values the sheet holds beyond
+   * the data of its node.
+   */
+  public long weight() {
+    long w = 48L;
+    for (String[] column : dates) {
+      if (null == column) continue;
+      w += 16L + 4L * column.length;
+      for (int r = 1; r <= size; r++) {
+        if (null != column[r]) {
+          w += 40L + 2L * column[r].length();
+        }
+      }
+    }
+    return w;
+  }
+
+  public List<AceComponent> components() throws IOException {
+    List<AceComponent> components = new ArrayList<>(size);
+    for (int r = 1; r <= size; r++) {
+      AceComponent c = new AceComponent();
+      int width = data.width(r);
+      for (int col = 0; col < width; col++) {
+        ColumnMetadata.Column column = columns.column(col);
+        String value = (null == column) ? null : value(r, col);
+        if (null != value) {
+          c.update(column.variable(), value, true, true, false);
+        }
+      }
+      components.add(c);
+    }
+    return components;
+  }
+
+  /**
+   * Join keys of the translated rows, in row order.
+   */
+  public List<CompositeKey> keys(KeyDescriptor descriptor) {
+    int[][] lookup = new int[descriptor.size()][];
+    for (int i = 0; i < lookup.length; i++) {
+      lookup[i] = positions.get(descriptor.column(i));
+    }
+    List<CompositeKey> keys = new ArrayList<>(size);
+    for (int r = 1; r <= size; r++) {
+      int width = data.width(r);
+      String[] values = new String[lookup.length];
+      for (int i = 0; i < lookup.length; i++) {
+        int col = lastColumn(data, r, lookup[i], width);
+        values[i] = (col < 0) ? null : value(r, col);
+      }
+      keys.add(new CompositeKey(descriptor, values));
+    }
+    return keys;
+  }
+
+  private String value(int row, int col) {
+    if (null != dates[col]) {
+      return dates[col][row];
+    }
+    return data.value(row, col);
+  }
+
+  /**
+   * Column that sets a variable of a row: the last non-blank one in the row, as later
+   * cells overwrite earlier ones with the same variable.
+   */
+  private static int lastColumn(SheetData data, int row, int[] positions, int width) {
+    if (null == positions) return -1;
+    for (int p : positions) {
+      if (p < width && null != data.value(row, p)) return p;
+    }
+    return -1;
+  }
+
+  /**
+   * Converts the dates of a row, or describes why they cannot be.
+   */
+  private static String convert(SheetData data, ColumnMetadata columns, SerialDateConverter converter,
+                                String[][] dates, int row) {
+    int width = Math.min(data.width(row), columns.size());
+    for (int col = 0; col < width; col++) {
+      if (null == dates[col] || null == data.value(row, col)) continue;
+      try {
+        if (data.type(col) == SheetData.Type.NUMERIC) {
+          dates[col][row] = converter.toIsoDate(data.number(row, col));
+        } else {
+          dates[col][row] = converter.toIsoDate(data.value(row, col));
+        }
+      } catch (IllegalArgumentException e) {
+        return columns.column(col).variable() + " is not a date: " + data.value(row, col);
+      }
+    }
+    return null;
+  }
+
+  private static int[] append(int[] a, int v) {
+    int[] b = Arrays.copyOf(a, a.length + 1);
+    b[a.length] = v;
+    return b;
+  }
+}
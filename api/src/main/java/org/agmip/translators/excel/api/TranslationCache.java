@@ -0,0 +1,116 @@
+package org.agmip.translators.excel.api;
+
+import org.agmip.ace.AceComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Translated sheets, keyed by the {@link DataNode} id.
+ *
+ * An entry holds the columnar {@link TranslatedSheet}, whose dates are already converted,
+ * together with the reference key computed from the indexes of its own node. Components
+ * are only built when they are emitted, fresh on every lookup so callers are free to
+ * modify them. An entry weighs what it retains beyond the captured data of the node: the
+ * converted dates and the keys. Entries are evicted least recently used first once the
+ * cache goes over its limit.
+ */
+public class TranslationCache {
+  private static final Logger LOG = LoggerFactory.getLogger(TranslationCache.class);
+  private final LinkedHashMap<String, Entry> entries;
+  private long limit;
+  private long size;
+
+  public TranslationCache(long limit) {
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.limit = limit;
+    this.size = 0L;
+  }
+
+  public synchronized void limit(long bytes) {
+    this.limit = bytes;
+    evict();
+  }
+
+  public synchronized long limit() {
+    return this.limit;
+  }
+
+  public synchronized long size() {
+    return this.size;
+  }
+
+  public synchronized Entry get(String id) {
+    return this.entries.get(id);
+  }
+
+  /**
+   * Caches a translated sheet and its keys when they fit.
+   */
+  public synchronized Entry put(DataNode node, TranslatedSheet translated, List<CompositeKey> keys) {
+    Entry entry = new Entry(translated, keys);
+    if (entry.weight > this.limit) {
+      LOG.info("{} is too large to cache ({} bytes)", node.name(), entry.weight);
+      return entry;
+    }
+    Entry previous = this.entries.put(node.id(), entry);
+    if (null != previous) {
+      this.size -= previous.weight;
+    }
+    this.size += entry.weight;
+    evict();
+    return entry;
+  }
+
+  public synchronized void clear() {
+    this.entries.clear();
+    this.size = 0L;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+    while (this.size > this.limit && it.hasNext()) {
+      Map.Entry<String, Entry> eldest = it.next();
+      LOG.info("Evicting translation of {}", eldest.getKey());
+      this.size -= eldest.getValue().weight;
+      it.remove();
+    }
+  }
+
+  public static class Entry {
+    private final TranslatedSheet translated;
+    private final List<CompositeKey> keys;
+    private final long weight;
+
+    private Entry(TranslatedSheet translated, List<CompositeKey> keys) {
+      long w = translated.weight() + 16L + 4L * keys.size();
+      for (CompositeKey k : keys) {
+        w += k.weight();
+      }
+      this.translated = translated;
+      this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+      this.weight = w;
+    }
+
+    public List<AceComponent> components() throws IOException {
+      return this.translated.components();
+    }
+
+    /**
+     * Bytes retained by the entry.
+     */
+    public long weight() {
+      return this.weight;
+    }
+
+    public List<CompositeKey> keys() {
+      return this.keys;
+    }
+
+    public int size() {
+      return this.translated.size();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package org.agmip.translators.excel.api;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Everything {@link ExcelModel#init()} infers about a workbook template: the variables,
+ * defines, indexes and walk path of every sheet, and how the sheets are arranged into
+ * roots, children and references.
+ *
+ * A plan is immutable and keyed by the {@link #fingerprint(List)} of the sheet names and
+ * header rows it was inferred from, so it can be stored and applied to any later workbook
+ * built from the same template instead of running the inference passes again.
+ */
+public final class TranslationPlan implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final String fingerprint;
+  private final List<SheetPlan> sheets;
+  private final List<String> roots;
+  private final List<String> unassigned;
+
+  private TranslationPlan(String fingerprint, List<SheetPlan> sheets, List<String> roots, List<String> unassigned) {
+    this.fingerprint = fingerprint;
+    this.sheets = Collections.unmodifiableList(sheets);
+    this.roots = Collections.unmodifiableList(roots);
+    this.unassigned = Collections.unmodifiableList(unassigned);
+  }
+
+  public String fingerprint() {
+    return this.fingerprint;
+  }
+
+  public List<SheetPlan> sheets() {
+    return this.sheets;
+  }
+
+  public List<String> roots() {
+    return this.roots;
+  }
+
+  /**
+   * Captures the plan of a built graph. {@code nodes} are all the sheets of the workbook,
+   * in workbook order.
+   */
+  public static TranslationPlan of(String fingerprint, List<DataNode> nodes, RootedGraph graph) {
+    if (! graph.isBuilt()) {
+      throw new IllegalStateException("Cannot capture the plan of a graph that is not built");
+    }
+    List<SheetPlan> sheets = new ArrayList<>(nodes.size());
+    for (DataNode n : nodes) {
+      sheets.add(new SheetPlan(n));
+    }
+    return new TranslationPlan(fingerprint, sheets, names(graph.roots()), names(graph.unassigned()));
+  }
+
+  /**
+   * Restores the inferred structure onto freshly ingested sheets, matched by name, and
+   * builds the graph from it.
+   */
+  public void apply(List<DataNode> nodes, RootedGraph graph) {
+    Map<String, DataNode> byName = new HashMap<>();
+    for (DataNode n : nodes) {
+      byName.put(n.name(), n);
+    }
+    for (SheetPlan s : this.sheets) {
+      DataNode n = node(byName, s.name);
+      if (n.variables().isEmpty()) {
+        for (String v : s.variables) {
+          n.addVariable(v);
+        }
+      }
+      n.indexes(s.indexes);
+      if (null != s.defines) n.defines(s.defines);
+      if (null != s.root) n.root(s.root);
+      if (! s.linkages.isEmpty()) n.link(String.join(",", s.linkages));
+      n.path(s.path);
+    }
+    for (SheetPlan s : this.sheets) {
+      DataNode n = node(byName, s.name);
+      for (String c : s.children) {
+        n.addChild(node(byName, c));
+      }
+      for (String r : s.references) {
+        n.addReference(node(byName, r));
+      }
+    }
+    List<DataNode> rootNodes = new ArrayList<>(this.roots.size());
+    for (String r : this.roots) {
+      rootNodes.add(node(byName, r));
+    }
+    List<DataNode> unassignedNodes = new ArrayList<>(this.unassigned.size());
+    for (String u : this.unassigned) {
+      unassignedNodes.add(node(byName, u));
+    }
+    graph.restore(rootNodes, unassignedNodes);
+  }
+
+  /**
+   * SHA-256 of the sheet names and standardized header rows, in workbook order. Each
+   * entry of {@code headers} is the sheet name followed by its header cells.
+   */
+  public static String fingerprint(List<List<String>> headers) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (List<String> sheet : headers) {
+      for (String cell : sheet) {
+        digest.update(cell.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0x1f);
+      }
+      digest.update((byte) 0x1e);
+    }
+    StringBuilder hex = new StringBuilder(64);
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+      hex.append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  private static DataNode node(Map<String, DataNode> byName, String name) {
+    DataNode n = byName.get(name);
+    if (null == n) {
+      throw new IllegalStateException("Sheet " + name + " of the plan is not in the workbook");
+    }
+    return n;
+  }
+
+  private static List<String> names(List<DataNode> nodes) {
+    List<String> names = new ArrayList<>(nodes.size());
+    for (DataNode n : nodes) {
+      names.add(n.name());
+    }
+    return names;
+  }
+
+  public static final class SheetPlan implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String name;
+    private final List<String> variables;
+    private final String indexes;
+    private final String defines;
+    private final String root;
+    private final String path;
+    private final List<String> linkages;
+    private final List<String> children;
+    private final List<String> references;
+
+    private SheetPlan(DataNode n) {
+      this.name = n.name();
+      this.variables = Collections.unmodifiableList(new ArrayList<>(n.variables()));
+      this.indexes = n.indexes();
+      this.defines = n.defines().orElse(null);
+      this.root = n.root().orElse(null);
+      this.path = n.path();
+      this.linkages = Collections.unmodifiableList(new ArrayList<>(n.linkages()));
+      this.children = Collections.unmodifiableList(names(n.children()));
+      this.references = Collections.unmodifiableList(names(n.references()));
+    }
+
+    public String name() { return this.name; }
+
+    public List<String> variables() { return this.variables; }
+
+    public String indexes() { return this.indexes; }
+
+    public Optional<String> defines() { return Optional.ofNullable(this.defines); }
+
+    public Optional<String> root() { return Optional.ofNullable(this.root); }
+
+    public String path() { return this.path; }
+
+    public List<String> children() { return this.children; }
+
+    public List<String> references() { return this.references; }
+  }
+}
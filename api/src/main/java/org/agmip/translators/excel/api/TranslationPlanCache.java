@@ -0,0 +1,90 @@
+package org.agmip.translators.excel.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Local directory of serialized {@link TranslationPlan}s, one file per fingerprint.
+ *
+ * A plan that cannot be read, for example one written by an incompatible version, is
+ * treated as missing and replaced by the next {@link #store(TranslationPlan)}. Only the
+ * classes a plan is made of are deserialized, so a file planted in the directory cannot
+ * instantiate anything else.
+ */
+public class TranslationPlanCache {
+  private static final Logger LOG = LoggerFactory.getLogger(TranslationPlanCache.class);
+  private static final Set<String> PLAN_CLASSES = new HashSet<>(Arrays.asList(
+      TranslationPlan.class.getName(),
+      TranslationPlan.SheetPlan.class.getName(),
+      ArrayList.class.getName(),
+      "java.util.Collections$UnmodifiableCollection",
+      "java.util.Collections$UnmodifiableList",
+      "java.util.Collections$UnmodifiableRandomAccessList"));
+  private final Path directory;
+
+  public TranslationPlanCache(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  public Path directory() {
+    return this.directory;
+  }
+
+  public TranslationPlan load(String fingerprint) {
+    Path file = file(fingerprint);
+    if (! Files.isRegularFile(file)) {
+      return null;
+    }
+    try (ObjectInputStream in = new PlanInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      TranslationPlan plan = (TranslationPlan) in.readObject();
+      if (! fingerprint.equals(plan.fingerprint())) {
+        LOG.warn("Ignoring plan {} recorded for {}", file, plan.fingerprint());
+        return null;
+      }
+      return plan;
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      LOG.warn("Ignoring unreadable plan {}: {}", file, e.toString());
+      return null;
+    }
+  }
+
+  public void store(TranslationPlan plan) throws IOException {
+    Path file = file(plan.fingerprint());
+    Path temp = Files.createTempFile(this.directory, plan.fingerprint(), ".tmp");
+    try {
+      try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeObject(plan);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private Path file(String fingerprint) {
+    return this.directory.resolve(fingerprint + ".plan");
+  }
+
+  private static class PlanInputStream extends ObjectInputStream {
+    private PlanInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      if (! PLAN_CLASSES.contains(desc.getName())) {
+        throw new InvalidClassException(desc.getName(), "not part of a translation plan");
+      }
+      return super.resolveClass(desc);
+    }
+  }
+}
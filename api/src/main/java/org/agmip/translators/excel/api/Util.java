@@ -1,6 +1,9 @@
 package org.agmip.translators.excel.api;
 
+import org.agmip.ace.lookup.LookupPath;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Util {
 
@@ -8,8 +11,49 @@ public class Util {
             new HashSet<>(Arrays.asList(new String[] {"SOIL_ID", "WST_ID", "EXPER_ID", "EXNAME"}))
     );
 
+    private static final ConcurrentHashMap<String, Optional<String>> PATHS = new ConcurrentHashMap<>();
+
+    /**
+     * Upper cases a header value and strips its whitespace. Values that are already
+     * standard, the common case, are returned as is.
+     */
     public static String standardizeVariable(String v) {
-        return v.toUpperCase().replaceAll("\\s", "");
+        int len = v.length();
+        boolean clean = true;
+        for (int i = 0; i < len && clean; i++) {
+            char c = v.charAt(i);
+            clean = ! (isWhitespace(c) || Character.toUpperCase(c) != c);
+        }
+        if (clean) {
+            return v;
+        }
+        String upper = v.toUpperCase();
+        StringBuilder out = new StringBuilder(upper.length());
+        for (int i = 0; i < upper.length(); i++) {
+            char c = upper.charAt(i);
+            if (! isWhitespace(c)) {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * ACE path of a variable. Each variable is resolved through {@code LookupPath} once per
+     * JVM and then served from a shared table, so concurrent workbooks do not contend on it.
+     */
+    public static String lookupPath(String variable) {
+        return PATHS.computeIfAbsent(variable, Util::resolvePath).orElse(null);
+    }
+
+    private static Optional<String> resolvePath(String variable) {
+        synchronized (LookupPath.INSTANCE) {
+            return Optional.ofNullable(LookupPath.INSTANCE.getPath(variable));
+        }
     }
 
     public static String frontPath(String p) {
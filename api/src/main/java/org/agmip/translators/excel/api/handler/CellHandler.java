@@ -0,0 +1,211 @@
+package org.agmip.translators.excel.api.handler;
+
+import org.agmip.translators.excel.api.SharedStrings;
+import org.agmip.translators.excel.api.Util;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+
+/**
+ * Base of the worksheet handlers.
+ *
+ * Turns the {@code row/c/v} SAX events into {@link #startRow()}, {@link #cell(int)},
+ * {@link #endRow()} and {@link #endSheet()} callbacks. Cells are addressed by the column
+ * of their {@code r} reference, so blank cells, which are left out of the part, do not
+ * shift the cells after them; a cell without a reference takes the column after the
+ * previous one. The text of the current value is accumulated in a reusable buffer and
+ * only turned into a {@code String} when a subclass asks for it through
+ * {@link #value()} or {@link #header()}.
+ *
+ * A subclass that has what it needs calls {@link #finish()}; the SAX callbacks then throw
+ * a {@link StopParsingException} so the parser stops reading the sheet, and
+ * {@link #parse(XMLReader, InputSource)} treats that as the normal end of the pass.
+ */
+public abstract class CellHandler extends DefaultHandler {
+  protected final SharedStrings sst;
+  private char[] buffer = new char[64];
+  private int length;
+  private int column;
+  private boolean inValue;
+  private boolean nextIsString;
+  private boolean finished;
+
+  protected CellHandler(SharedStrings sst) {
+    this.sst = sst;
+  }
+
+  @Override
+  public void startDocument() throws SAXException {
+    this.finished = false;
+    this.inValue = false;
+    this.nextIsString = false;
+    this.column = 0;
+    this.length = 0;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+    if (finished) throw new StopParsingException();
+    switch (qName) {
+      case "row":
+        beginRow();
+        break;
+      case "c":
+        String cellType = attributes.getValue("t");
+        String reference = attributes.getValue("r");
+        beginCell(cellType != null && cellType.equals("s"), (null == reference) ? -1 : columnIndex(reference));
+        break;
+      case "v":
+        beginValue();
+        break;
+      default:
+        break;
+    }
+    if (finished) throw new StopParsingException();
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int len) throws SAXException {
+    if (! inValue) return;
+    if (length + len > buffer.length) {
+      char[] grown = new char[Math.max(buffer.length * 2, length + len)];
+      System.arraycopy(buffer, 0, grown, 0, length);
+      buffer = grown;
+    }
+    System.arraycopy(ch, start, buffer, length, len);
+    length += len;
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) throws SAXException {
+    if (finished) throw new StopParsingException();
+    switch (qName) {
+      case "v":
+        endValue();
+        break;
+      case "row":
+        endRow();
+        break;
+      case "sheetData":
+        endSheet();
+        break;
+      default:
+        break;
+    }
+    if (finished) throw new StopParsingException();
+  }
+
+  /**
+   * Parses a worksheet part with this handler, stopping as soon as the handler is
+   * finished.
+   */
+  public void parse(XMLReader parser, InputSource source) throws IOException, SAXException {
+    parser.setContentHandler(this);
+    try {
+      parser.parse(source);
+    } catch (StopParsingException e) {
+      // the handler has read all it needs
+    }
+  }
+
+  // Element events shared by the SAX callbacks and the WorksheetScanner
+
+  void beginRow() throws SAXException {
+    column = 0;
+    startRow();
+  }
+
+  /**
+   * Starts a cell, at the given zero-based column or, when negative, at the column after
+   * the previous cell.
+   */
+  void beginCell(boolean sharedString, int cellColumn) {
+    nextIsString = sharedString;
+    if (cellColumn >= 0) {
+      column = cellColumn;
+    }
+  }
+
+  void beginValue() {
+    length = 0;
+    inValue = true;
+  }
+
+  void endValue() throws SAXException {
+    inValue = false;
+    cell(column);
+    column++;
+    nextIsString = false;
+  }
+
+  /**
+   * Ends the pass: no further callbacks are made and the parser is stopped.
+   */
+  protected void finish() {
+    this.finished = true;
+  }
+
+  protected boolean isFinished() {
+    return this.finished;
+  }
+
+  /**
+   * Value of the current cell, with shared strings resolved.
+   */
+  protected String value() {
+    if (nextIsString) {
+      return sst.get(sharedIndex());
+    }
+    return new String(buffer, 0, length);
+  }
+
+  /**
+   * Value of the current cell as a standardized variable name.
+   */
+  protected String header() {
+    return Util.standardizeVariable(value());
+  }
+
+  protected void startRow() throws SAXException {}
+
+  protected void cell(int column) throws SAXException {}
+
+  protected void endRow() throws SAXException {}
+
+  protected void endSheet() throws SAXException {}
+
+  /**
+   * Zero-based column of an A1 style cell reference ({@code "C12"} is 2), from its
+   * leading letters; -1 when it has none.
+   */
+  public static int columnIndex(CharSequence reference) {
+    int column = 0;
+    for (int i = 0; i < reference.length(); i++) {
+      char c = reference.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        column = column * 26 + (c - 'A' + 1);
+      } else if (c >= 'a' && c <= 'z') {
+        column = column * 26 + (c - 'a' + 1);
+      } else {
+        break;
+      }
+    }
+    return column - 1;
+  }
+
+  private int sharedIndex() {
+    int idx = 0;
+    for (int i = 0; i < length; i++) {
+      char c = buffer[i];
+      if (c < '0' || c > '9') {
+        return Integer.parseInt(new String(buffer, 0, length).trim());
+      }
+      idx = idx * 10 + (c - '0');
+    }
+    return idx;
+  }
+}
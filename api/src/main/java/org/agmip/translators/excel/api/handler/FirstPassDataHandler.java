@@ -1,146 +1,102 @@
 package org.agmip.translators.excel.api.handler;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.agmip.translators.excel.api.DataNode;
-import org.agmip.translators.excel.api.Util;
-import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.model.SharedStringsTable;
-import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.agmip.translators.excel.api.SharedStrings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
-public class FirstPassDataHandler extends DefaultHandler {
+/**
+ * Infers the index columns of a sheet from its leading potential index columns.
+ *
+ * The sheet defines its index when the index values of the scanned rows are all
+ * distinct, and only references it once a duplicate shows up. Scanning stops at the first
+ * duplicate, or once {@code sampleLimit} data rows were seen without one, in which case
+ * the sheet is taken to define its index.
+ */
+public class FirstPassDataHandler extends CellHandler {
+  public static final int DEFAULT_SAMPLE_LIMIT = 10000;
   private static final Logger LOG = LoggerFactory.getLogger(FirstPassDataHandler.class);
-  private final SharedStringsTable sst;
-  private final XSSFReader reader;
-  private final XMLReader parser;
-  private boolean finished = false;
-  private boolean foundRow = false;
-  private boolean duplicateDataFound = false;
-  private boolean nextIsString;
-  private boolean inlineString;
+  private final int sampleLimit;
   private int indexColumns;
   private int rowNum = 0;
-  private int colNum = 0;
   private DataNode node;
-  private String contents;
-  private StringBuilder temp;
-  private StringBuilder cmp;
+  private List<String> temp;
+  private Set<List<String>> seen;
   private StringBuilder defines;
   private List<String> defined;
 
-  public FirstPassDataHandler(DataNode node, int indexColumns, List<String> defined, SharedStringsTable sst, XSSFReader reader) throws SAXException {
+  public FirstPassDataHandler(DataNode node, int indexColumns, List<String> defined, SharedStrings sst) throws SAXException {
+    this(node, indexColumns, defined, sst, DEFAULT_SAMPLE_LIMIT);
+  }
+
+  public FirstPassDataHandler(DataNode node, int indexColumns, List<String> defined, SharedStrings sst, int sampleLimit) throws SAXException {
+    super(sst);
     this.node = node;
     this.indexColumns = indexColumns;
     this.defined = defined;
-    this.sst = sst;
-    this.reader = reader;
-    this.parser = XMLReaderFactory.createXMLReader();
-    this.temp = new StringBuilder();
-    this.cmp = new StringBuilder();
+    this.sampleLimit = sampleLimit;
+    this.temp = new ArrayList<>(indexColumns);
+    this.seen = new HashSet<>();
     this.defines = new StringBuilder();
   }
 
   @Override
   public void startDocument() throws SAXException {
+    super.startDocument();
     this.rowNum = 0;
-    this.colNum = 0;
-    this.foundRow = false;
-    this.finished = false;
-    this.duplicateDataFound = false;
+    this.seen.clear();
   }
 
   @Override
-  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-    if (finished) return;
-    switch (qName) {
-      case "row":
-        foundRow = true;
-        break;
-      case "c":
-        if (foundRow) {
-          String cellType = attributes.getValue("t");
-          nextIsString = cellType != null && cellType.equals("s");
-          inlineString = cellType != null && cellType.equals("inlineStr");
-        }
-        break;
-      default:
-        break;
+  protected void endRow() throws SAXException {
+    rowNum++;
+    if (! temp.isEmpty()) {
+      if (defined.contains(defines.toString())) {
+        LOG.info("{} already defined", defines.toString());
+        node.indexes(defines.toString());
+        finish();
+        return;
+      }
+      if (! seen.add(temp)) {
+        LOG.info("Duplicate found: {} {}", defines, temp);
+        node.indexes(defines.toString());
+        finish();
+        return;
+      }
+      temp = new ArrayList<>(indexColumns);
+    }
+    if (rowNum > sampleLimit) {
+      LOG.info("No duplicate in the first {} rows of {}", sampleLimit, node.name());
+      endSheet();
+      finish();
     }
-    contents = "";
   }
 
   @Override
-  public void characters(char[] ch, int start, int length) throws SAXException {
-    if (!finished) contents += new String(ch, start, length);
+  protected void cell(int colNum) throws SAXException {
+    if (colNum >= indexColumns) return;
+    if (rowNum == 0) {
+      if (defines.length() == 0) {
+        defines.append(header());
+      } else {
+        defines.append(",").append(header());
+      }
+    } else {
+      temp.add(value());
+    }
   }
 
   @Override
-  public void endElement(String uri, String localName, String qName) throws SAXException {
-    if (finished) return;
-    if (nextIsString) {
-      int idx = Integer.parseInt(contents);
-      contents = new XSSFRichTextString(sst.getEntryAt(idx)).toString();
-      nextIsString = false;
-    }
-    contents = Util.standardizeVariable(contents);
-    switch(qName) {
-      case "row":
-        // Do comparitor here
-        colNum = 0;
-        rowNum++;
-        if (temp.length() > 0) {
-          if (defined.contains(defines.toString())) {
-            LOG.info("{} already defined", defines.toString());
-            node.indexes(defines.toString());
-            finished = true;
-            return;
-          }
-          temp.append("|");
-          if (cmp.indexOf(temp.toString()) == -1) {
-            cmp.append(temp.toString());
-            temp = new StringBuilder();
-          } else {
-            LOG.info("Duplicate found: {} {}", defines, temp.toString());
-            node.indexes(defines.toString());
-            finished = true;
-          }
-        }
-        break;
-      case "v":
-        if (rowNum == 0 && colNum < indexColumns) {
-          if (defines.length() == 0) {
-            defines.append(contents);
-          } else {
-            defines.append(",").append(contents);
-          }
-        } else {
-          if (colNum < indexColumns) {
-            if (indexColumns == 1) {
-              temp.append(contents);
-            } else {
-              temp.append(contents).append(",");
-            }
-          }
-        }
-        colNum++;
-        break;
-      case "sheetData":
-        LOG.info("{} defines {}", node.name(), defines.toString());
-        defined.add(defines.toString());
-        node.defines(defines.toString());
-        node.indexes(node.defines().get());
-        break;
-      default:
-        break;
-    }
+  protected void endSheet() throws SAXException {
+    LOG.info("{} defines {}", node.name(), defines.toString());
+    defined.add(defines.toString());
+    node.defines(defines.toString());
+    node.indexes(node.defines().get());
   }
 }
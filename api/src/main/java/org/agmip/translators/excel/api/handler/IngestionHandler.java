@@ -0,0 +1,117 @@
+package org.agmip.translators.excel.api.handler;
+
+import java.util.Arrays;
+
+import org.agmip.translators.excel.api.DataNode;
+import org.agmip.translators.excel.api.SheetData;
+import org.agmip.translators.excel.api.Util;
+import org.agmip.translators.excel.api.SharedStrings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Single scan of a worksheet: registers the header variables on the node and captures
+ * its rows into a {@link SheetData} for the later inference and translation passes.
+ * Values keep their column, blank cells are captured as {@code null}.
+ *
+ * With a row limit the scan stops once the header and that many data rows are captured,
+ * and the data is only marked complete when the end of the sheet was reached. Variables
+ * are only registered on a node that has none yet, so a sampled sheet can be captured
+ * again in full.
+ */
+public class IngestionHandler extends CellHandler {
+  private static final Logger LOG = LoggerFactory.getLogger(IngestionHandler.class);
+  private final DataNode node;
+  private final SheetData data;
+  private final int rowLimit;
+  private String[] row;
+  private int width;
+  private boolean foundHeader = false;
+
+  public IngestionHandler(DataNode node, SharedStrings sst) {
+    this(node, sst, Integer.MAX_VALUE);
+  }
+
+  public IngestionHandler(DataNode node, SharedStrings sst, int rowLimit) {
+    super(sst);
+    this.node = node;
+    this.rowLimit = rowLimit;
+    this.data = new SheetData();
+    this.row = new String[50];
+    node.data(this.data);
+  }
+
+  @Override
+  public void startDocument() throws SAXException {
+    super.startDocument();
+    this.foundHeader = false;
+    this.width = 0;
+  }
+
+  @Override
+  protected void startRow() throws SAXException {
+    width = 0;
+  }
+
+  @Override
+  protected void cell(int column) throws SAXException {
+    set(column, value());
+  }
+
+  @Override
+  protected void endRow() throws SAXException {
+    capture();
+  }
+
+  /**
+   * Captures a row read from another source than a worksheet part, such as a delimited
+   * file. Blank ({@code null}) values are kept as blank cells of their column.
+   */
+  public void addRow(String[] values, int count) {
+    if (isFinished()) return;
+    width = 0;
+    for (int i = 0; i < count; i++) {
+      if (null != values[i]) {
+        set(i, values[i]);
+      }
+    }
+    capture();
+  }
+
+  private void set(int column, String value) {
+    if (column >= row.length) {
+      row = Arrays.copyOf(row, Math.max(row.length * 2, column + 1));
+    }
+    if (column > width) {
+      Arrays.fill(row, width, column, null);
+    }
+    row[column] = value;
+    width = Math.max(width, column + 1);
+  }
+
+  private void capture() {
+    if (! foundHeader) {
+      foundHeader = true;
+      if (node.variables().isEmpty()) {
+        for (int c = 0; c < width; c++) {
+          if (null == row[c]) continue;
+          String variable = Util.standardizeVariable(row[c]);
+          if (! variable.startsWith("!")) {
+            node.addVariable(c, variable);
+          }
+        }
+      }
+    }
+    data.addRow(Arrays.copyOf(row, width));
+    if (data.size() > rowLimit) {
+      finish();
+    }
+  }
+
+  @Override
+  protected void endSheet() throws SAXException {
+    data.complete(true);
+    LOG.info("{} captured {} row(s)", node.name(), data.size());
+  }
+}
@@ -0,0 +1,102 @@
+package org.agmip.translators.excel.api.handler;
+
+import java.util.function.Consumer;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streams the {@code si} entries of a shared strings part as plain text.
+ *
+ * The text of an entry is the concatenation of its {@code t} elements, rich text runs
+ * included and phonetic runs ({@code rPh}) excluded, with {@code _xHHHH_} escapes
+ * decoded, which is what {@code XSSFRichTextString.toString()} returns.
+ */
+public class SharedStringsHandler extends DefaultHandler {
+  private final Consumer<String> entries;
+  private final StringBuilder contents;
+  private boolean inText = false;
+  private boolean inPhonetic = false;
+
+  public SharedStringsHandler(Consumer<String> entries) {
+    this.entries = entries;
+    this.contents = new StringBuilder(64);
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+    switch (localName(qName)) {
+      case "si":
+        contents.setLength(0);
+        break;
+      case "rPh":
+        inPhonetic = true;
+        break;
+      case "t":
+        inText = ! inPhonetic;
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) throws SAXException {
+    if (inText) contents.append(ch, start, length);
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) throws SAXException {
+    switch (localName(qName)) {
+      case "si":
+        entries.accept(decode(contents));
+        break;
+      case "rPh":
+        inPhonetic = false;
+        break;
+      case "t":
+        inText = false;
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static String localName(String qName) {
+    int colon = qName.indexOf(':');
+    return (colon < 0) ? qName : qName.substring(colon + 1);
+  }
+
+  private static String decode(CharSequence s) {
+    int len = s.length();
+    int i = 0;
+    while (i < len && ! isEscape(s, i)) {
+      i++;
+    }
+    if (i == len) {
+      return s.toString();
+    }
+    StringBuilder out = new StringBuilder(len);
+    out.append(s, 0, i);
+    while (i < len) {
+      if (isEscape(s, i)) {
+        out.append((char) Integer.parseInt(s.subSequence(i + 2, i + 6).toString(), 16));
+        i += 7;
+      } else {
+        out.append(s.charAt(i++));
+      }
+    }
+    return out.toString();
+  }
+
+  private static boolean isEscape(CharSequence s, int i) {
+    if (i + 6 >= s.length() || s.charAt(i) != '_' || s.charAt(i + 1) != 'x' || s.charAt(i + 6) != '_') {
+      return false;
+    }
+    for (int j = i + 2; j < i + 6; j++) {
+      if (Character.digit(s.charAt(j), 16) < 0) return false;
+    }
+    return true;
+  }
+}
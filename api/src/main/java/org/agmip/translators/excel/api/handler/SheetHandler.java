@@ -1,38 +1,31 @@
 package org.agmip.translators.excel.api.handler;
 
-import java.io.IOException;
-import java.io.InputStream;
-
 import org.agmip.translators.excel.api.DataNode;
 import org.agmip.translators.excel.api.RootedGraph;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.model.SharedStringsTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 public class SheetHandler extends DefaultHandler {
   private static final Logger LOG = LoggerFactory.getLogger(SheetHandler.class);
-  private final SharedStringsTable sst;
   private final XSSFReader reader;
-  private final XMLReader parser;
   private final RootedGraph graph;
+  private boolean date1904 = false;
 
-  public SheetHandler(RootedGraph graph, SharedStringsTable sst, XSSFReader reader) throws SAXException {
+  public SheetHandler(RootedGraph graph, XSSFReader reader) throws SAXException {
     this.graph = graph;
-    this.sst = sst;
     this.reader = reader;
-    this.parser = XMLReaderFactory.createXMLReader();
   }
 
   @Override
   public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+    if (qName.equals("workbookPr")) {
+      String d = attributes.getValue("date1904");
+      date1904 = "1".equals(d) || "true".equals(d);
+    }
     if (qName.equals("sheet")) {
       String id = attributes.getValue("r:id");
       String name = attributes.getValue("name");
@@ -41,4 +34,11 @@ public class SheetHandler extends DefaultHandler {
       graph.addNode(node);
     }
   }
+
+  /**
+   * Whether the serial dates of the workbook count from 1904 rather than 1900.
+   */
+  public boolean date1904() {
+    return this.date1904;
+  }
 }
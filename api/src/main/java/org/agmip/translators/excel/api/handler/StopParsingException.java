@@ -0,0 +1,21 @@
+package org.agmip.translators.excel.api.handler;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Thrown by a {@link CellHandler} that has read everything it needs, to stop the parser
+ * feeding it instead of letting it inflate and tokenize the rest of the sheet. It marks
+ * a normal end of the pass, not a failure, and carries no stack trace.
+ */
+public class StopParsingException extends SAXException {
+  private static final long serialVersionUID = 1L;
+
+  public StopParsingException() {
+    super("Handler finished");
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
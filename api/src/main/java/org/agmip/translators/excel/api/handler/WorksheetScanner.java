@@ -0,0 +1,436 @@
+package org.agmip.translators.excel.api.handler;
+
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads a worksheet part straight from its UTF-8 bytes and drives a {@link CellHandler}
+ * with the same callbacks as the SAX path, without a generic XML parser in between.
+ *
+ * Only the elements the handlers act on are recognized: {@code row}, {@code c} and its
+ * {@code t} and {@code r} attributes, {@code v} and the end of {@code sheetData}. The
+ * column of a cell is decoded from the letters of its reference as they are read; no
+ * {@code Attributes} or element name strings are built. Value text is decoded with
+ * character references, CDATA sections and line ends handled as an XML parser would,
+ * and handed to the handler as a char buffer. Scanning stops as soon as the handler is finished. Buffers are reused
+ * across scans, so an instance must not be shared by concurrent scans.
+ */
+public class WorksheetScanner {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int PROLOG_SIZE = 259;
+  private static final int OTHER = 0;
+  private static final int ROW = 1;
+  private static final int CELL = 2;
+  private static final int VALUE = 3;
+  private static final int SHEET_DATA = 4;
+  private static final byte[] SHEET_DATA_NAME = "sheetData".getBytes(StandardCharsets.US_ASCII);
+  private final byte[] bytes = new byte[BUFFER_SIZE];
+  private final byte[] name = new byte[SHEET_DATA_NAME.length];
+  private int position;
+  private int limit;
+  private InputStream in;
+  private char[] text = new char[64];
+  private int textLength;
+  private int last;
+  private boolean sharedString;
+  private int cellColumn;
+
+  public void scan(InputStream in, CellHandler handler) throws IOException, SAXException {
+    this.in = in;
+    this.position = 0;
+    this.limit = 0;
+    checkEncoding();
+    handler.startDocument();
+    boolean inValue = false;
+    int depth = 0;
+    int b;
+    while (! handler.isFinished() && (b = next()) >= 0) {
+      if (b != '<') {
+        if (inValue) {
+          text(b);
+        }
+        continue;
+      }
+      b = next();
+      if (b == '/') {
+        int element = element(next());
+        while (last != '>') {
+          last = required();
+        }
+        depth--;
+        switch (element) {
+          case VALUE:
+            inValue = false;
+            endValue(handler);
+            break;
+          case ROW:
+            handler.endRow();
+            break;
+          case SHEET_DATA:
+            handler.endSheet();
+            break;
+          default:
+            break;
+        }
+      } else if (b == '?') {
+        skipPast('?', '>');
+      } else if (b == '!') {
+        declaration(inValue);
+      } else {
+        int element = element(b);
+        boolean empty = attributes(element == CELL);
+        if (! empty) {
+          depth++;
+        }
+        switch (element) {
+          case ROW:
+            handler.beginRow();
+            if (empty && ! handler.isFinished()) {
+              handler.endRow();
+            }
+            break;
+          case CELL:
+            handler.beginCell(sharedString, cellColumn);
+            break;
+          case VALUE:
+            handler.beginValue();
+            textLength = 0;
+            inValue = ! empty;
+            if (empty) {
+              endValue(handler);
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    }
+    if (depth > 0 && ! handler.isFinished()) {
+      throw truncated();
+    }
+    handler.endDocument();
+  }
+
+  private void endValue(CellHandler handler) throws SAXException {
+    handler.characters(text, 0, textLength);
+    textLength = 0;
+    handler.endValue();
+  }
+
+  /**
+   * Reads an element name starting with {@code b} and identifies it; the byte after the
+   * name is left in {@link #last}.
+   */
+  private int element(int b) throws IOException, SAXException {
+    int length = 0;
+    while (b >= 0 && ! isSpace(b) && b != '>' && b != '/') {
+      if (length < name.length) {
+        name[length] = (byte) b;
+      }
+      length++;
+      b = next();
+    }
+    if (b < 0) {
+      throw truncated();
+    }
+    last = b;
+    if (length == 1) {
+      return (name[0] == 'c') ? CELL : (name[0] == 'v') ? VALUE : OTHER;
+    }
+    if (length == 3 && name[0] == 'r' && name[1] == 'o' && name[2] == 'w') {
+      return ROW;
+    }
+    if (length == SHEET_DATA_NAME.length) {
+      for (int i = 0; i < length; i++) {
+        if (name[i] != SHEET_DATA_NAME[i]) return OTHER;
+      }
+      return SHEET_DATA;
+    }
+    return OTHER;
+  }
+
+  /**
+   * Skips the attributes of a start tag, noting whether {@code t="s"} is among them and
+   * the column of {@code r} when asked to. Returns whether the element is empty
+   * ({@code />}).
+   */
+  private boolean attributes(boolean cell) throws IOException, SAXException {
+    sharedString = false;
+    cellColumn = -1;
+    int b = last;
+    while (true) {
+      while (isSpace(b)) {
+        b = required();
+      }
+      if (b == '>') {
+        return false;
+      }
+      if (b == '/') {
+        required();
+        return true;
+      }
+      int first = b;
+      int length = 0;
+      while (b != '=' && ! isSpace(b)) {
+        length++;
+        b = required();
+      }
+      while (b != '=') {
+        b = required();
+      }
+      int quote = required();
+      while (isSpace(quote)) {
+        quote = required();
+      }
+      boolean type = cell && length == 1 && first == 't';
+      boolean reference = cell && length == 1 && first == 'r';
+      int valueLength = 0;
+      boolean shared = false;
+      int column = 0;
+      boolean letters = true;
+      while ((b = required()) != quote) {
+        if (type) {
+          shared = (valueLength == 0 && b == 's');
+        } else if (reference && letters) {
+          if (b >= 'A' && b <= 'Z') {
+            column = column * 26 + (b - 'A' + 1);
+          } else if (b >= 'a' && b <= 'z') {
+            column = column * 26 + (b - 'a' + 1);
+          } else {
+            letters = false;
+          }
+        }
+        valueLength++;
+      }
+      if (type) {
+        sharedString = shared && valueLength == 1;
+      } else if (reference) {
+        cellColumn = column - 1;
+      }
+      b = required();
+    }
+  }
+
+  /**
+   * Comment, CDATA section or document type declaration after {@code <!}.
+   */
+  private void declaration(boolean inValue) throws IOException, SAXException {
+    int b = required();
+    if (b == '-') {
+      required();
+      int dashes = 0;
+      while (true) {
+        b = required();
+        if (b == '>' && dashes >= 2) return;
+        dashes = (b == '-') ? dashes + 1 : 0;
+      }
+    }
+    if (b == '[') {
+      for (int i = 0; i < 6; i++) {
+        required();
+      }
+      int brackets = 0;
+      while (true) {
+        b = required();
+        if (b == '>' && brackets >= 2) {
+          textLength -= (inValue) ? 2 : 0;
+          return;
+        }
+        brackets = (b == ']') ? brackets + 1 : 0;
+        if (inValue) {
+          character(b);
+        }
+      }
+    }
+    int depth = 0;
+    while (b != '>' || depth > 0) {
+      if (b == '[') depth++;
+      if (b == ']') depth--;
+      b = required();
+    }
+  }
+
+  private void skipPast(int first, int second) throws IOException, SAXException {
+    int previous = 0;
+    int b;
+    while ((b = required()) != second || previous != first) {
+      previous = b;
+    }
+  }
+
+  /**
+   * Appends a byte of value text, resolving references and normalizing line ends.
+   */
+  private void text(int b) throws IOException, SAXException {
+    if (b == '&') {
+      reference();
+    } else {
+      character(b);
+    }
+  }
+
+  /**
+   * Appends the character starting with byte {@code b} of a UTF-8 sequence.
+   */
+  private void character(int b) throws IOException, SAXException {
+    if (b < 0x80) {
+      if (b == '\r') {
+        if (peek() == '\n') {
+          next();
+        }
+        b = '\n';
+      }
+      append((char) b);
+      return;
+    }
+    int codePoint;
+    if ((b & 0xE0) == 0xC0) {
+      codePoint = ((b & 0x1F) << 6) | (required() & 0x3F);
+    } else if ((b & 0xF0) == 0xE0) {
+      codePoint = ((b & 0x0F) << 12) | ((required() & 0x3F) << 6) | (required() & 0x3F);
+    } else if ((b & 0xF8) == 0xF0) {
+      codePoint = ((b & 0x07) << 18) | ((required() & 0x3F) << 12) | ((required() & 0x3F) << 6) | (required() & 0x3F);
+    } else {
+      codePoint = 0xFFFD;
+    }
+    appendCodePoint(codePoint);
+  }
+
+  private void reference() throws IOException, SAXException {
+    int b = required();
+    if (b == '#') {
+      int radix = 10;
+      b = required();
+      if (b == 'x') {
+        radix = 16;
+        b = required();
+      }
+      int codePoint = 0;
+      while (b != ';') {
+        int digit = Character.digit(b, radix);
+        if (digit < 0) {
+          throw new SAXException("Malformed character reference in worksheet");
+        }
+        codePoint = codePoint * radix + digit;
+        b = required();
+      }
+      appendCodePoint(codePoint);
+      return;
+    }
+    int length = 0;
+    while (b != ';') {
+      if (length < name.length) {
+        name[length] = (byte) b;
+      }
+      length++;
+      b = required();
+    }
+    String entity = new String(name, 0, Math.min(length, name.length), StandardCharsets.US_ASCII);
+    switch ((length <= name.length) ? entity : "") {
+      case "amp": append('&'); break;
+      case "lt": append('<'); break;
+      case "gt": append('>'); break;
+      case "quot": append('"'); break;
+      case "apos": append('\''); break;
+      default: throw new SAXException("Undeclared entity &" + entity + "; in worksheet");
+    }
+  }
+
+  private void appendCodePoint(int codePoint) {
+    if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+      append((char) codePoint);
+    } else {
+      append(Character.highSurrogate(codePoint));
+      append(Character.lowSurrogate(codePoint));
+    }
+  }
+
+  private void append(char c) {
+    if (textLength == text.length) {
+      char[] grown = new char[text.length * 2];
+      System.arraycopy(text, 0, grown, 0, textLength);
+      text = grown;
+    }
+    text[textLength++] = c;
+  }
+
+  /**
+   * Skips a UTF-8 byte order mark and rejects parts declared in another encoding.
+   */
+  private void checkEncoding() throws IOException {
+    // A short first read must not hide the declaration
+    while (limit < PROLOG_SIZE) {
+      int n = in.read(bytes, limit, PROLOG_SIZE - limit);
+      if (n < 0) {
+        break;
+      }
+      limit += n;
+    }
+    if (limit == 0) {
+      return;
+    }
+    if (limit >= 2 && ((bytes[0] == (byte) 0xFE && bytes[1] == (byte) 0xFF) || (bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xFE))) {
+      throw new IOException("Worksheet part is not UTF-8 encoded");
+    }
+    if (limit >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+      position = 3;
+    }
+    String start = new String(bytes, position, Math.min(limit - position, 256), StandardCharsets.ISO_8859_1);
+    if (start.startsWith("<?xml")) {
+      int end = start.indexOf("?>");
+      String declaration = (end < 0) ? start : start.substring(0, end);
+      int encoding = declaration.indexOf("encoding");
+      if (encoding >= 0) {
+        String value = declaration.substring(encoding + 8).replaceAll("^\\s*=\\s*[\"']([^\"']*)[\"'].*$", "$1");
+        String upper = value.toUpperCase(Locale.ROOT);
+        if (! upper.equals("UTF-8") && ! upper.equals("UTF8")) {
+          throw new IOException("Worksheet part is encoded in " + value + ", not UTF-8");
+        }
+      }
+    }
+  }
+
+  private int next() throws IOException {
+    if (position == limit && ! fill()) {
+      return -1;
+    }
+    return bytes[position++] & 0xFF;
+  }
+
+  private int peek() throws IOException {
+    if (position == limit && ! fill()) {
+      return -1;
+    }
+    return bytes[position] & 0xFF;
+  }
+
+  private int required() throws IOException, SAXException {
+    int b = next();
+    if (b < 0) {
+      throw truncated();
+    }
+    return b;
+  }
+
+  private boolean fill() throws IOException {
+    int n;
+    do {
+      n = in.read(bytes, 0, bytes.length);
+    } while (n == 0);
+    position = 0;
+    limit = Math.max(n, 0);
+    return n > 0;
+  }
+
+  private static SAXException truncated() {
+    return new SAXException("Unexpected end of worksheet part");
+  }
+
+  private static boolean isSpace(int b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+  }
+}
@@ -0,0 +1,181 @@
+package org.agmip.translators.excel.api.io;
+
+import org.agmip.translators.excel.api.AceSink;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming ACEB writer producing the gzipped
+ * {@code {"experiments":[...],"soils":[...],"weathers":[...]}} document.
+ *
+ * The section of the first component received is written straight to the output as
+ * components arrive; components of the other sections are appended to one spool file
+ * per section, so only the component being written is held in memory. {@link #close()}
+ * ends the streamed section, appends the spooled ones and removes the spools.
+ */
+public class AcebWriter implements AceSink, Closeable {
+  private static final byte[] COMMA = {','};
+  private final OutputStream out;
+  private final boolean ownsOut;
+  private final Section experiments;
+  private final Section soils;
+  private final Section weathers;
+  private OutputStream gz;
+  private Section streamed;
+  private boolean closed = false;
+
+  public AcebWriter(Path file) throws IOException {
+    this(Files.newOutputStream(file), true);
+  }
+
+  public AcebWriter(OutputStream out) throws IOException {
+    this(out, false);
+  }
+
+  private AcebWriter(OutputStream out, boolean ownsOut) throws IOException {
+    this.out = out;
+    this.ownsOut = ownsOut;
+    this.experiments = new Section("experiments");
+    this.soils = new Section("soils");
+    this.weathers = new Section("weathers");
+  }
+
+  @Override
+  public void experiment(byte[] raw) throws IOException {
+    append(experiments, raw);
+  }
+
+  @Override
+  public void weather(byte[] raw) throws IOException {
+    append(weathers, raw);
+  }
+
+  @Override
+  public void soil(byte[] raw) throws IOException {
+    append(soils, raw);
+  }
+
+  /**
+   * Whether anything was written to the output yet.
+   */
+  public boolean started() {
+    return null != gz;
+  }
+
+  private void append(Section section, byte[] raw) throws IOException {
+    if (null == streamed) {
+      streamed = section;
+      start().write(section.opening());
+    }
+    if (section == streamed) {
+      section.append(gz, raw);
+    } else {
+      section.spool(raw);
+    }
+  }
+
+  private OutputStream start() throws IOException {
+    if (null == gz) {
+      gz = new GZIPOutputStream(new BufferedOutputStream(out, 65536), 65536);
+      gz.write('{');
+    }
+    return gz;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    try (OutputStream doc = start()) {
+      boolean first = true;
+      if (null != streamed) {
+        doc.write(']');
+        first = false;
+      }
+      for (Section section : new Section[] {experiments, soils, weathers}) {
+        if (section == streamed) continue;
+        if (! first) {
+          doc.write(',');
+        }
+        section.transferTo(doc);
+        first = false;
+      }
+      doc.write('}');
+    } finally {
+      experiments.delete();
+      soils.delete();
+      weathers.delete();
+    }
+  }
+
+  /**
+   * Drops the components received so far without finishing the document, for a
+   * translation that failed. Output already streamed is left as a truncated gzip stream,
+   * so it cannot be mistaken for a document. A stream handed to the writer is left open;
+   * the file the writer opened itself is closed.
+   */
+  public void discard() throws IOException {
+    if (closed) return;
+    closed = true;
+    try {
+      experiments.delete();
+      soils.delete();
+      weathers.delete();
+    } finally {
+      if (ownsOut) {
+        out.close();
+      }
+    }
+  }
+
+  private static class Section {
+    private final String name;
+    private Path spool;
+    private OutputStream stream;
+    private boolean empty = true;
+
+    private Section(String name) {
+      this.name = name;
+    }
+
+    private byte[] opening() {
+      return ("\"" + name + "\":[").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void append(OutputStream dest, byte[] raw) throws IOException {
+      if (! empty) {
+        dest.write(COMMA);
+      }
+      dest.write(raw);
+      empty = false;
+    }
+
+    private void spool(byte[] raw) throws IOException {
+      if (null == stream) {
+        spool = Files.createTempFile("aceb-" + name, ".json");
+        stream = new BufferedOutputStream(Files.newOutputStream(spool), 65536);
+      }
+      append(stream, raw);
+    }
+
+    private void transferTo(OutputStream dest) throws IOException {
+      dest.write(opening());
+      if (null != stream) {
+        stream.close();
+        Files.copy(spool, dest);
+      }
+      dest.write(']');
+    }
+
+    private void delete() throws IOException {
+      if (null != stream) {
+        stream.close();
+        Files.deleteIfExists(spool);
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package org.agmip.translators.excel.api.io;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only {@link SeekableByteChannel} over the remaining bytes of a buffer, which is
+ * neither copied nor modified.
+ */
+public class ByteBufferChannel implements SeekableByteChannel {
+  private final ByteBuffer buffer;
+  private boolean open = true;
+
+  public ByteBufferChannel(ByteBuffer buffer) {
+    this.buffer = buffer.slice();
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws ClosedChannelException {
+    ensureOpen();
+    if (! buffer.hasRemaining()) {
+      return -1;
+    }
+    int n = Math.min(dst.remaining(), buffer.remaining());
+    ByteBuffer src = buffer.duplicate();
+    src.limit(src.position() + n);
+    dst.put(src);
+    buffer.position(buffer.position() + n);
+    return n;
+  }
+
+  @Override
+  public int write(ByteBuffer src) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public long position() throws ClosedChannelException {
+    ensureOpen();
+    return buffer.position();
+  }
+
+  @Override
+  public SeekableByteChannel position(long newPosition) throws ClosedChannelException {
+    ensureOpen();
+    buffer.position((int) Math.min(newPosition, buffer.limit()));
+    return this;
+  }
+
+  @Override
+  public long size() throws ClosedChannelException {
+    ensureOpen();
+    return buffer.limit();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (! open) {
+      throw new ClosedChannelException();
+    }
+  }
+}
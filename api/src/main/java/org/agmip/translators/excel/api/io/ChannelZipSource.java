@@ -0,0 +1,317 @@
+package org.agmip.translators.excel.api.io;
+
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+import org.apache.poi.openxml4j.util.ZipSecureFile;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Zip archive read in place from a {@link SeekableByteChannel}, for opening a workbook
+ * held in memory or behind a channel without copying it to a temp file.
+ *
+ * The entries come from the central directory at the end of the archive and each part
+ * is inflated straight from its offset in the channel when it is opened. Parts can be
+ * read by concurrent threads; every read positions the channel under its lock. Closing
+ * the source closes the channel.
+ *
+ * As this replaces POI's {@link ZipSecureFile}, every part is read under the same limits:
+ * it may not inflate past its declared size or {@link ZipSecureFile#getMaxEntrySize()},
+ * and past a grace size it must keep the compression ratio of
+ * {@link ZipSecureFile#getMinInflateRatio()}, so a zip bomb fails before it fills the heap.
+ */
+public class ChannelZipSource implements ZipEntrySource {
+  private static final int EOCD = 0x06054b50;
+  private static final int ZIP64_EOCD = 0x06064b50;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int MAX_EOCD_SEARCH = 22 + 0xFFFF;
+  private static final long GRACE_ENTRY_SIZE = 100 * 1024;
+  private final SeekableByteChannel channel;
+  private final Map<String, Long> offsets;
+  private final List<ZipEntry> entries;
+  private volatile boolean closed;
+
+  public ChannelZipSource(SeekableByteChannel channel) throws IOException {
+    this.channel = channel;
+    this.offsets = new HashMap<>();
+    this.entries = new ArrayList<>();
+    readCentralDirectory();
+  }
+
+  @Override
+  public Enumeration<? extends ZipEntry> getEntries() {
+    return Collections.enumeration(this.entries);
+  }
+
+  @Override
+  public InputStream getInputStream(ZipEntry entry) throws IOException {
+    Long offset = offsets.get(entry.getName());
+    if (null == offset) {
+      throw new ZipException("No entry " + entry.getName());
+    }
+    ByteBuffer local = read(offset, 30);
+    if (local.getInt(0) != LOCAL_HEADER) {
+      throw new ZipException("Bad local header for " + entry.getName());
+    }
+    long start = offset + 30 + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+    RegionInputStream raw = new RegionInputStream(start, entry.getCompressedSize());
+    if (entry.getMethod() == ZipEntry.STORED) {
+      return new ThresholdInputStream(raw, entry, null);
+    }
+    if (entry.getMethod() != ZipEntry.DEFLATED) {
+      throw new ZipException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName());
+    }
+    final Inflater inflater = new Inflater(true);
+    return new ThresholdInputStream(new InflaterInputStream(raw, inflater, 8192) {
+      @Override
+      public void close() throws IOException {
+        super.close();
+        inflater.end();
+      }
+    }, entry, raw);
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    channel.close();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  private void readCentralDirectory() throws IOException {
+    long size = channel.size();
+    int tail = (int) Math.min(size, MAX_EOCD_SEARCH);
+    ByteBuffer end = read(size - tail, tail);
+    int eocd = -1;
+    for (int i = tail - 22; i >= 0; i--) {
+      if (end.getInt(i) == EOCD) {
+        eocd = i;
+        break;
+      }
+    }
+    if (eocd < 0) {
+      throw new ZipException("Not a zip archive: no end of central directory");
+    }
+    long count = end.getShort(eocd + 10) & 0xFFFF;
+    long cdSize = end.getInt(eocd + 12) & 0xFFFFFFFFL;
+    long cdOffset = end.getInt(eocd + 16) & 0xFFFFFFFFL;
+    long eocdPosition = size - tail + eocd;
+    if ((count == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) && eocdPosition >= 20) {
+      ByteBuffer locator = read(eocdPosition - 20, 20);
+      if (locator.getInt(0) == ZIP64_LOCATOR) {
+        ByteBuffer zip64 = read(locator.getLong(8), 56);
+        if (zip64.getInt(0) != ZIP64_EOCD) {
+          throw new ZipException("Bad zip64 end of central directory");
+        }
+        count = zip64.getLong(32);
+        cdSize = zip64.getLong(40);
+        cdOffset = zip64.getLong(48);
+      }
+    }
+    if (cdSize > Integer.MAX_VALUE) {
+      throw new ZipException("Central directory too large: " + cdSize);
+    }
+    ByteBuffer cd = read(cdOffset, (int) cdSize);
+    int p = 0;
+    for (long n = 0; n < count; n++) {
+      if (cd.getInt(p) != CENTRAL_HEADER) {
+        throw new ZipException("Bad central directory entry " + n);
+      }
+      int flags = cd.getShort(p + 8) & 0xFFFF;
+      int method = cd.getShort(p + 10) & 0xFFFF;
+      long crc = cd.getInt(p + 16) & 0xFFFFFFFFL;
+      long compressed = cd.getInt(p + 20) & 0xFFFFFFFFL;
+      long uncompressed = cd.getInt(p + 24) & 0xFFFFFFFFL;
+      int nameLength = cd.getShort(p + 28) & 0xFFFF;
+      int extraLength = cd.getShort(p + 30) & 0xFFFF;
+      int commentLength = cd.getShort(p + 32) & 0xFFFF;
+      long offset = cd.getInt(p + 42) & 0xFFFFFFFFL;
+      byte[] name = new byte[nameLength];
+      cd.position(p + 46);
+      cd.get(name);
+      // Zip64 extended information replaces the saturated fields, in this order
+      int extra = p + 46 + nameLength;
+      int extraEnd = extra + extraLength;
+      while (extra + 4 <= extraEnd) {
+        int id = cd.getShort(extra) & 0xFFFF;
+        int length = cd.getShort(extra + 2) & 0xFFFF;
+        if (id == 0x0001) {
+          int q = extra + 4;
+          if (uncompressed == 0xFFFFFFFFL) { uncompressed = cd.getLong(q); q += 8; }
+          if (compressed == 0xFFFFFFFFL) { compressed = cd.getLong(q); q += 8; }
+          if (offset == 0xFFFFFFFFL) { offset = cd.getLong(q); }
+        }
+        extra += 4 + length;
+      }
+      String entryName = new String(name, ((flags & 0x800) != 0) ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+      ZipEntry entry = new ZipEntry(entryName);
+      entry.setMethod(method);
+      entry.setCrc(crc);
+      entry.setCompressedSize(compressed);
+      entry.setSize(uncompressed);
+      entries.add(entry);
+      offsets.put(entryName, offset);
+      p = extraEnd + commentLength;
+    }
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    synchronized (channel) {
+      channel.position(position);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new EOFException("Zip archive truncated at " + (position + buffer.position()));
+        }
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Bytes of an entry, counted against the limits of {@link ZipSecureFile}. The ratio is
+   * only checked for a deflated entry, whose raw stream is given.
+   */
+  private static class ThresholdInputStream extends FilterInputStream {
+    private final ZipEntry entry;
+    private final RegionInputStream raw;
+    private long counter;
+
+    private ThresholdInputStream(InputStream in, ZipEntry entry, RegionInputStream raw) {
+      super(in);
+      this.entry = entry;
+      this.raw = raw;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b >= 0) {
+        advance(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n > 0) {
+        advance(n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip(n);
+      advance(skipped);
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void advance(long n) throws IOException {
+      counter += n;
+      if (counter > ZipSecureFile.getMaxEntrySize()) {
+        throw new ZipException("Zip entry " + entry.getName() + " exceeds the maximum entry size of "
+            + ZipSecureFile.getMaxEntrySize() + " bytes");
+      }
+      if (entry.getSize() >= 0 && counter > entry.getSize()) {
+        throw new ZipException("Zip entry " + entry.getName() + " inflates past its declared size of "
+            + entry.getSize() + " bytes");
+      }
+      if (null == raw || counter <= GRACE_ENTRY_SIZE) {
+        return;
+      }
+      double ratio = (double) raw.consumed() / counter;
+      if (ratio < ZipSecureFile.getMinInflateRatio()) {
+        throw new ZipException("Zip bomb detected: entry " + entry.getName() + " inflates with a ratio of "
+            + ratio + ", below the minimum of " + ZipSecureFile.getMinInflateRatio());
+      }
+    }
+  }
+
+  /**
+   * Raw bytes of an entry, read through the shared channel in chunks.
+   */
+  private class RegionInputStream extends InputStream {
+    private final ByteBuffer chunk = ByteBuffer.allocate(8192);
+    private final long length;
+    private long position;
+    private long remaining;
+
+    private RegionInputStream(long start, long length) {
+      this.length = length;
+      this.position = start;
+      this.remaining = length;
+      this.chunk.limit(0);
+    }
+
+    /**
+     * Bytes handed out so far.
+     */
+    private long consumed() {
+      return length - remaining - chunk.remaining();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (! fill()) return -1;
+      return chunk.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return 0;
+      if (! fill()) return -1;
+      int n = Math.min(len, chunk.remaining());
+      chunk.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return chunk.remaining();
+    }
+
+    private boolean fill() throws IOException {
+      if (chunk.hasRemaining()) return true;
+      if (remaining <= 0) return false;
+      chunk.clear();
+      chunk.limit((int) Math.min(chunk.capacity(), remaining));
+      synchronized (channel) {
+        channel.position(position);
+        while (chunk.hasRemaining()) {
+          if (channel.read(chunk) < 0) {
+            throw new EOFException("Zip entry truncated at " + (position + chunk.position()));
+          }
+        }
+      }
+      chunk.flip();
+      position += chunk.remaining();
+      remaining -= chunk.remaining();
+      return true;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package org.agmip.translators.excel.api.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reads a UTF-8 delimited file (RFC 4180 quoting, any line ending) through a file
+ * channel, one row at a time.
+ *
+ * The byte, char and field buffers are reused across rows and files, so an instance
+ * must not be shared by concurrent readers. Empty fields are handed out as {@code null},
+ * like blank cells, and blank lines are skipped.
+ */
+public class DelimitedReader {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private final char delimiter;
+  private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+  private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+  private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final StringBuilder field = new StringBuilder(64);
+  private String[] fields = new String[32];
+  private int count;
+  private boolean quoted;
+  private boolean inQuotes;
+  private boolean quoteInQuotes;
+  private boolean afterCarriageReturn;
+  private boolean firstChar;
+
+  public interface RowHandler {
+    /**
+     * Called for every row; {@code fields} is reused, only its first {@code count}
+     * entries belong to the row.
+     */
+    void row(String[] fields, int count) throws IOException;
+  }
+
+  public DelimitedReader(char delimiter) {
+    this.delimiter = delimiter;
+  }
+
+  /**
+   * Whether a file is read as delimited values: {@code .csv}, {@code .tsv} or
+   * {@code .tab}, in any case.
+   */
+  public static boolean isDelimited(String fileName) {
+    String lower = fileName.toLowerCase(Locale.ROOT);
+    return lower.endsWith(".csv") || lower.endsWith(".tsv") || lower.endsWith(".tab");
+  }
+
+  /**
+   * Delimiter of a file from its extension: tab for {@code .tsv} and {@code .tab}, comma
+   * otherwise.
+   */
+  public static char delimiterOf(String fileName) {
+    String lower = fileName.toLowerCase(Locale.ROOT);
+    return (lower.endsWith(".tsv") || lower.endsWith(".tab")) ? '\t' : ',';
+  }
+
+  /**
+   * Reads the whole file and returns the number of bytes read.
+   */
+  public long read(Path file, RowHandler handler) throws IOException {
+    reset();
+    long total = 0L;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      boolean eof = false;
+      while (! eof) {
+        int n = channel.read(bytes);
+        if (n < 0) {
+          eof = true;
+        } else {
+          total += n;
+        }
+        bytes.flip();
+        CoderResult result = decoder.decode(bytes, chars, eof);
+        if (result.isError()) {
+          result.throwException();
+        }
+        if (eof) {
+          decoder.flush(chars);
+        }
+        bytes.compact();
+        chars.flip();
+        parse(handler);
+        chars.clear();
+      }
+    }
+    if (inQuotes && ! quoteInQuotes) {
+      throw new IOException("Unterminated quoted field at the end of " + file);
+    }
+    if (count > 0 || field.length() > 0 || quoted) {
+      endRow(handler);
+    }
+    return total;
+  }
+
+  private void reset() {
+    bytes.clear();
+    chars.clear();
+    decoder.reset();
+    field.setLength(0);
+    count = 0;
+    quoted = false;
+    inQuotes = false;
+    quoteInQuotes = false;
+    afterCarriageReturn = false;
+    firstChar = true;
+  }
+
+  private void parse(RowHandler handler) throws IOException {
+    while (chars.hasRemaining()) {
+      char c = chars.get();
+      if (firstChar) {
+        firstChar = false;
+        if (c == '\uFEFF') continue;
+      }
+      if (afterCarriageReturn) {
+        afterCarriageReturn = false;
+        if (c == '\n') continue;
+      }
+      if (inQuotes) {
+        if (quoteInQuotes) {
+          quoteInQuotes = false;
+          if (c == '"') {
+            field.append('"');
+            continue;
+          }
+          inQuotes = false;
+        } else if (c == '"') {
+          quoteInQuotes = true;
+          continue;
+        } else {
+          field.append(c);
+          continue;
+        }
+      }
+      if (c == delimiter) {
+        endField();
+      } else if (c == '\n' || c == '\r') {
+        afterCarriageReturn = (c == '\r');
+        endRow(handler);
+      } else if (c == '"' && field.length() == 0 && ! quoted) {
+        inQuotes = true;
+        quoted = true;
+      } else {
+        field.append(c);
+      }
+    }
+  }
+
+  private void endField() {
+    if (count == fields.length) {
+      fields = Arrays.copyOf(fields, fields.length * 2);
+    }
+    fields[count++] = (field.length() == 0) ? null : field.toString();
+    field.setLength(0);
+    quoted = false;
+  }
+
+  private void endRow(RowHandler handler) throws IOException {
+    boolean blank = (count == 0 && field.length() == 0 && ! quoted);
+    endField();
+    if (! blank) {
+      handler.row(fields, count);
+    }
+    count = 0;
+  }
+}
@@ -0,0 +1,111 @@
+package org.agmip.translators.excel.api.metrics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bridge to the {@code org.agmip.translators.excel.Phase} Flight Recorder event.
+ *
+ * The event is defined at run time with {@code jdk.jfr.EventFactory}, looked up
+ * reflectively, so the metrics still compile for and run on JVMs without {@code jdk.jfr};
+ * there no event is emitted.
+ */
+final class JfrEvents {
+  private static final int PHASE = 0;
+  private static final int SHEET = 1;
+  private static final int ROWS = 2;
+  private static final int CELLS = 3;
+  private static final int BYTES = 4;
+  private static final Jfr JFR = Jfr.load();
+
+  private JfrEvents() {}
+
+  static Object begin(TranslationMetrics.Phase phase, String sheet) {
+    if (null == JFR) {
+      return null;
+    }
+    try {
+      Object event = JFR.newEvent.invoke(JFR.factory);
+      if (! (Boolean) JFR.isEnabled.invoke(event)) {
+        return null;
+      }
+      JFR.set.invoke(event, PHASE, phase.name());
+      JFR.set.invoke(event, SHEET, sheet);
+      JFR.begin.invoke(event);
+      return event;
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  static void end(Object event, long rows, long cells, long bytes) {
+    if (null == event) {
+      return;
+    }
+    try {
+      JFR.end.invoke(event);
+      if ((Boolean) JFR.shouldCommit.invoke(event)) {
+        JFR.set.invoke(event, ROWS, rows);
+        JFR.set.invoke(event, CELLS, cells);
+        JFR.set.invoke(event, BYTES, bytes);
+        JFR.commit.invoke(event);
+      }
+    } catch (ReflectiveOperationException e) {
+      // the event is lost, the metrics are not
+    }
+  }
+
+  private static final class Jfr {
+    private final Object factory;
+    private final Method newEvent;
+    private final Method isEnabled;
+    private final Method set;
+    private final Method begin;
+    private final Method end;
+    private final Method shouldCommit;
+    private final Method commit;
+
+    private Jfr(ClassLoader loader) throws ReflectiveOperationException {
+      Class<?> element = Class.forName("jdk.jfr.AnnotationElement", false, loader);
+      Constructor<?> annotation = element.getConstructor(Class.class, Object.class);
+      Class<?> label = Class.forName("jdk.jfr.Label", false, loader);
+      List<Object> annotations = Arrays.asList(
+          annotation.newInstance(Class.forName("jdk.jfr.Name", false, loader), "org.agmip.translators.excel.Phase"),
+          annotation.newInstance(label, "Translation Phase"),
+          annotation.newInstance(Class.forName("jdk.jfr.Category", false, loader), new String[] {"AgMIP", "Excel Translator"}),
+          annotation.newInstance(Class.forName("jdk.jfr.Description", false, loader),
+              "A phase of the translation of a workbook, or of one of its sheets"),
+          annotation.newInstance(Class.forName("jdk.jfr.StackTrace", false, loader), false));
+      Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor", false, loader);
+      Constructor<?> field = descriptor.getConstructor(Class.class, String.class, List.class);
+      List<Object> fields = Arrays.asList(
+          field.newInstance(String.class, "phase", Collections.singletonList(annotation.newInstance(label, "Phase"))),
+          field.newInstance(String.class, "sheet", Collections.singletonList(annotation.newInstance(label, "Sheet"))),
+          field.newInstance(long.class, "rows", Collections.singletonList(annotation.newInstance(label, "Rows"))),
+          field.newInstance(long.class, "cells", Collections.singletonList(annotation.newInstance(label, "Cells"))),
+          field.newInstance(long.class, "bytesInflated", Arrays.asList(annotation.newInstance(label, "Bytes Inflated"),
+              annotation.newInstance(Class.forName("jdk.jfr.DataAmount", false, loader), "BYTES"))));
+      Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory", false, loader);
+      this.factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+      this.newEvent = factoryClass.getMethod("newEvent");
+      Class<?> event = Class.forName("jdk.jfr.Event", false, loader);
+      this.isEnabled = event.getMethod("isEnabled");
+      this.set = event.getMethod("set", int.class, Object.class);
+      this.begin = event.getMethod("begin");
+      this.end = event.getMethod("end");
+      this.shouldCommit = event.getMethod("shouldCommit");
+      this.commit = event.getMethod("commit");
+    }
+
+    private static Jfr load() {
+      try {
+        return new Jfr(JfrEvents.class.getClassLoader());
+      } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package org.agmip.translators.excel.api.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counters of the translation of one workbook, per phase and per sheet.
+ *
+ * Every {@link Timer} also emits a {@code org.agmip.translators.excel.Phase} JFR event
+ * when the running JVM has Flight Recorder, so production runs can be profiled without
+ * turning on debug logging. Metrics can be recorded from concurrent sheet tasks.
+ */
+public class TranslationMetrics {
+  /**
+   * Phases of a translation. {@code CAPTURE} is the full read, during the run, of a sheet
+   * that the variable scan only sampled.
+   */
+  public enum Phase { WORKBOOK_SCAN, VARIABLE_SCAN, FIRST_PASS, GRAPH_BUILD, CAPTURE, TRANSLATE, MERGE, OUTPUT }
+
+  private final Map<Phase, Counters> phases;
+  private final ConcurrentHashMap<String, Sheet> sheets;
+  private final LongAdder translationHits = new LongAdder();
+  private final LongAdder translationMisses = new LongAdder();
+  private final LongAdder planHits = new LongAdder();
+  private final LongAdder planMisses = new LongAdder();
+
+  public TranslationMetrics() {
+    this.phases = new EnumMap<>(Phase.class);
+    for (Phase p : Phase.values()) {
+      this.phases.put(p, new Counters());
+    }
+    this.sheets = new ConcurrentHashMap<>();
+  }
+
+  public Timer time(Phase phase) {
+    return new Timer(phase, null);
+  }
+
+  /**
+   * Times a phase of a single sheet; the time also counts towards the phase.
+   */
+  public Timer time(Phase phase, String sheet) {
+    return new Timer(phase, sheet);
+  }
+
+  public void translationCacheHit() { translationHits.increment(); }
+
+  public void translationCacheMiss() { translationMisses.increment(); }
+
+  public void planCacheHit() { planHits.increment(); }
+
+  public void planCacheMiss() { planMisses.increment(); }
+
+  public long nanos(Phase phase) {
+    return phases.get(phase).nanos.sum();
+  }
+
+  /**
+   * Number of timed runs of a phase.
+   */
+  public long count(Phase phase) {
+    return phases.get(phase).count.sum();
+  }
+
+  public long rows(Phase phase) {
+    return phases.get(phase).rows.sum();
+  }
+
+  public long cells(Phase phase) {
+    return phases.get(phase).cells.sum();
+  }
+
+  public long bytesInflated() {
+    long total = 0L;
+    for (Counters c : phases.values()) {
+      total += c.bytes.sum();
+    }
+    return total;
+  }
+
+  public long parsePasses() {
+    long total = 0L;
+    for (Sheet s : sheets.values()) {
+      total += s.parsePasses();
+    }
+    return total;
+  }
+
+  public long translationCacheHits() { return translationHits.sum(); }
+
+  public long translationCacheMisses() { return translationMisses.sum(); }
+
+  public long planCacheHits() { return planHits.sum(); }
+
+  public long planCacheMisses() { return planMisses.sum(); }
+
+  public Sheet sheet(String name) {
+    return sheets.get(name);
+  }
+
+  public Collection<Sheet> sheets() {
+    return Collections.unmodifiableCollection(sheets.values());
+  }
+
+  /**
+   * Counts a scan of the XML of a sheet, as opposed to a replay of captured rows.
+   */
+  public void parsePass(String sheet) {
+    sheetFor(sheet).parsePasses.increment();
+  }
+
+  private Sheet sheetFor(String name) {
+    return sheets.computeIfAbsent(name, Sheet::new);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    for (Phase p : Phase.values()) {
+      Counters c = phases.get(p);
+      out.append(p).append(": ").append(TimeUnit.NANOSECONDS.toMillis(c.nanos.sum())).append(" ms");
+      if (c.rows.sum() > 0) out.append(", ").append(c.rows.sum()).append(" rows");
+      if (c.cells.sum() > 0) out.append(", ").append(c.cells.sum()).append(" cells");
+      if (c.bytes.sum() > 0) out.append(", ").append(c.bytes.sum()).append(" bytes");
+      out.append('\n');
+    }
+    out.append("Parse passes: ").append(parsePasses());
+    out.append(", translation cache: ").append(translationCacheHits()).append(" hit(s) ")
+        .append(translationCacheMisses()).append(" miss(es)");
+    out.append(", plan cache: ").append(planCacheHits()).append(" hit(s) ")
+        .append(planCacheMisses()).append(" miss(es)");
+    return out.toString();
+  }
+
+  private static class Counters {
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder count = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder cells = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    private void add(long nanos, long rows, long cells, long bytes) {
+      this.nanos.add(nanos);
+      this.count.increment();
+      this.rows.add(rows);
+      this.cells.add(cells);
+      this.bytes.add(bytes);
+    }
+  }
+
+  public static final class Sheet {
+    private final String name;
+    private final Map<Phase, Counters> phases;
+    private final LongAdder parsePasses = new LongAdder();
+
+    private Sheet(String name) {
+      this.name = name;
+      this.phases = Collections.synchronizedMap(new EnumMap<>(Phase.class));
+    }
+
+    public String name() { return this.name; }
+
+    public long nanos(Phase phase) {
+      Counters c = phases.get(phase);
+      return (null == c) ? 0L : c.nanos.sum();
+    }
+
+    public long rows(Phase phase) {
+      Counters c = phases.get(phase);
+      return (null == c) ? 0L : c.rows.sum();
+    }
+
+    public long cells(Phase phase) {
+      Counters c = phases.get(phase);
+      return (null == c) ? 0L : c.cells.sum();
+    }
+
+    public long bytesInflated() {
+      long total = 0L;
+      synchronized (phases) {
+        for (Counters c : phases.values()) {
+          total += c.bytes.sum();
+        }
+      }
+      return total;
+    }
+
+    public long parsePasses() { return parsePasses.sum(); }
+
+    private Counters counters(Phase phase) {
+      synchronized (phases) {
+        return phases.computeIfAbsent(phase, p -> new Counters());
+      }
+    }
+  }
+
+  /**
+   * Running measurement of a phase, stopped by {@link #close()}.
+   */
+  public final class Timer implements AutoCloseable {
+    private final Phase phase;
+    private final String sheet;
+    private final long start;
+    private final Object event;
+    private long rows;
+    private long cells;
+    private long bytes;
+    private boolean closed;
+
+    private Timer(Phase phase, String sheet) {
+      this.phase = phase;
+      this.sheet = sheet;
+      this.event = JfrEvents.begin(phase, sheet);
+      this.start = System.nanoTime();
+    }
+
+    public Timer rows(long n) {
+      this.rows += n;
+      return this;
+    }
+
+    public Timer cells(long n) {
+      this.cells += n;
+      return this;
+    }
+
+    public Timer bytesInflated(long n) {
+      this.bytes += n;
+      return this;
+    }
+
+    @Override
+    public void close() {
+      if (closed) return;
+      closed = true;
+      long elapsed = System.nanoTime() - start;
+      phases.get(phase).add(elapsed, rows, cells, bytes);
+      if (null != sheet) {
+        sheetFor(sheet).counters(phase).add(elapsed, rows, cells, bytes);
+      }
+      JfrEvents.end(event, rows, cells, bytes);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package org.agmip.translators.excel.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.agmip.ace.AceRecord;
+import org.agmip.ace.AceSoil;
+import org.agmip.ace.AceWeather;
+import org.agmip.translators.excel.api.io.ByteBufferChannel;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ExcelModelTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void packageWithoutWorkbookIsClosed() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OPCPackage empty = OPCPackage.create(out);
+    empty.close();
+    ByteBufferChannel channel = new ByteBufferChannel(ByteBuffer.wrap(out.toByteArray()));
+    try {
+      new ExcelModel(channel).close();
+      fail("A package without a workbook part was opened");
+    } catch (Exception expected) {
+      assertFalse(channel.isOpen());
+    }
+  }
+
+  @Test
+  public void notAZipIsClosed() throws Exception {
+    ByteBufferChannel channel = new ByteBufferChannel(ByteBuffer.wrap(new byte[] {'n', 'o', 't', ' ', 'a', ' ', 'z', 'i', 'p'}));
+    try {
+      new ExcelModel(channel).close();
+      fail("A file that is not a zip archive was opened");
+    } catch (Exception expected) {
+      assertFalse(channel.isOpen());
+    }
+  }
+
+  @Test
+  public void childRowsJoinTheirParentInSheetOrder() throws Exception {
+    Object[][] stations = {{"WST_ID", "WST_LAT"}, {"W1", 35.5}, {"W2", -12.25}, {"W3", 1}};
+    Object[][] dailies = {{"WST_ID", "W_DATE", "TMAX"},
+        {"W1", 42000, "30"}, {"W2", 42000, "20"}, {"W1", 42001, "31"}, {"W9", 42000, "0"},
+        {"W2", 42001, "21"}, {"W1", 42002, "32"}};
+    Object[][] soils = {{"SOIL_ID", "SL_SOURCE"}, {"S1", "lab"}, {"S2", "survey"}};
+    Object[][] layers = {{"SOIL_ID", "SLLB"},
+        {"S2", "15"}, {"S1", "10"}, {"S2", "40"}, {"S1", "30"}, {"S1", "60"}};
+    File workbook = TestWorkbooks.write(folder.newFile("join.xlsx"),
+        TestWorkbooks.sheet("Weather", stations), TestWorkbooks.sheet("Daily", dailies),
+        TestWorkbooks.sheet("Soil", soils), TestWorkbooks.sheet("Layers", layers));
+    final Map<String, List<String>> weather = new LinkedHashMap<>();
+    final Map<String, List<String>> soil = new LinkedHashMap<>();
+    try (ExcelModel model = new ExcelModel(workbook.toPath())) {
+      model.init();
+      model.run(new AceSink() {
+        @Override
+        public void experiment(byte[] raw) {}
+
+        @Override
+        public void weather(byte[] raw) throws IOException {
+          AceWeather w = new AceWeather(raw);
+          weather.put(w.getValue("WST_ID"), values(w.getDailyWeather(), "TMAX"));
+        }
+
+        @Override
+        public void soil(byte[] raw) throws IOException {
+          AceSoil s = new AceSoil(raw);
+          soil.put(s.getValue("SOIL_ID"), values(s.getSoilLayers(), "SLLB"));
+        }
+      });
+    }
+    assertEquals(nestedLoopJoin(stations, dailies), weather);
+    assertEquals(nestedLoopJoin(soils, layers), soil);
+  }
+
+  /**
+   * The join as it was done before the children were grouped: every parent scans all
+   * of the child rows.
+   */
+  private static Map<String, List<String>> nestedLoopJoin(Object[][] parents, Object[][] children) {
+    Map<String, List<String>> joined = new LinkedHashMap<>();
+    for (int p = 1; p < parents.length; p++) {
+      List<String> values = new ArrayList<>();
+      for (int c = 1; c < children.length; c++) {
+        if (parents[p][0].equals(children[c][0])) {
+          values.add((String) children[c][children[c].length - 1]);
+        }
+      }
+      joined.put((String) parents[p][0], values);
+    }
+    return joined;
+  }
+
+  private static List<String> values(Iterable<AceRecord> records, String variable) throws IOException {
+    List<String> values = new ArrayList<>();
+    for (AceRecord r : records) {
+      values.add(r.getValue(variable));
+    }
+    return values;
+  }
+}
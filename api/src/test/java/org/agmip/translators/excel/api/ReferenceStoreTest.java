@@ -0,0 +1,78 @@
+package org.agmip.translators.excel.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.agmip.ace.AceComponent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReferenceStoreTest {
+  private static final KeyDescriptor KEY = KeyDescriptor.compile("FE_ID,SEQ");
+
+  @Test
+  public void rowsKeepTheirOrderInMemory() throws Exception {
+    try (ReferenceStore store = new ReferenceStore(Long.MAX_VALUE)) {
+      Map<CompositeKey, List<String>> added = fill(store, 50, 7);
+      assertFalse(store.isSpilled());
+      assertRows(added, store);
+    }
+  }
+
+  @Test
+  public void rowsKeepTheirOrderAcrossTheSpill() throws Exception {
+    try (ReferenceStore store = new ReferenceStore(16 * 1024)) {
+      Map<CompositeKey, List<String>> added = fill(store, 5000, 700);
+      assertTrue(store.isSpilled());
+      assertRows(added, store);
+      assertTrue(store.get(KEY.keyOf(row("F-none", null, "0"))).isEmpty());
+    }
+  }
+
+  /**
+   * Adds rows round robin over the keys, so every key has rows on both sides of the
+   * memory limit once the store spills. One key in each group has no SEQ value.
+   */
+  private static Map<CompositeKey, List<String>> fill(ReferenceStore store, int rows, int keys) throws IOException {
+    Map<CompositeKey, List<String>> added = new LinkedHashMap<>();
+    for (int i = 0; i < rows; i++) {
+      int k = i % keys;
+      AceComponent c = row("F" + k, (k % 10 == 0) ? null : "1", Integer.toString(i));
+      CompositeKey key = KEY.keyOf(c);
+      store.add(key, c);
+      List<String> values = added.get(key);
+      if (null == values) {
+        values = new ArrayList<>();
+        added.put(key, values);
+      }
+      values.add(Integer.toString(i));
+    }
+    return added;
+  }
+
+  private static void assertRows(Map<CompositeKey, List<String>> added, ReferenceStore store) throws IOException {
+    for (Map.Entry<CompositeKey, List<String>> e : added.entrySet()) {
+      List<String> found = new ArrayList<>();
+      for (AceComponent c : store.get(e.getKey())) {
+        found.add(c.getValue("FEAMN"));
+      }
+      assertEquals(e.getKey().toString(), e.getValue(), found);
+    }
+  }
+
+  private static AceComponent row(String id, String seq, String amount) throws IOException {
+    AceComponent c = new AceComponent();
+    c.update("FE_ID", id, true, true, false);
+    if (null != seq) {
+      c.update("SEQ", seq, true, true, false);
+    }
+    c.update("FEAMN", amount, true, true, false);
+    return c;
+  }
+}
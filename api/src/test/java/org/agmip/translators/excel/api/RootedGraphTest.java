@@ -0,0 +1,73 @@
+package org.agmip.translators.excel.api;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RootedGraphTest {
+  @Test
+  public void sheetsAreArrangedUnderTheirRoots() throws Exception {
+    DataNode fert = node("Fert", "FE_ID", "FE_ID", "FE_ID", "FEDATE", "FEAMN");
+    DataNode exp = node("Exp", "EXNAME", "EXNAME", "EXNAME", "PI_NAME", "FE_ID", "WST_ID");
+    exp.root("EXNAME");
+    DataNode trt = node("Trt", "EXNAME", null, "EXNAME", "TRTNO", "TNAME");
+    DataNode obs = node("Obs", "EXNAME,TRTNO", null, "EXNAME", "TRTNO", "HWAM");
+    DataNode daily = node("Daily", "WST_ID", null, "WST_ID", "W_DATE", "TMAX");
+    DataNode weather = node("Weather", "WST_ID", "WST_ID", "WST_ID", "WST_LAT");
+    weather.root("WST_ID");
+    DataNode notes = node("Notes", "NOTE", null, "NOTE", "TEXT");
+    RootedGraph graph = graph(fert, exp, trt, obs, daily, weather, notes);
+
+    assertEquals(Arrays.asList(exp, weather), graph.roots());
+    assertEquals(Arrays.asList(trt, obs), exp.children());
+    assertEquals(Arrays.asList(fert), exp.references());
+    assertEquals(Arrays.asList("FE_ID"), exp.linkages());
+    assertEquals(Arrays.asList("EXNAME"), trt.linkages());
+    assertSame(exp, obs.parent());
+    assertEquals(Arrays.asList(daily), weather.children());
+    assertEquals(Arrays.asList(notes), graph.unassigned());
+  }
+
+  @Test
+  public void referenceGoesToTheFirstSheetUsingIt() throws Exception {
+    DataNode first = node("Mgmt1", "PLID", "PLID", "PLID", "FE_ID");
+    DataNode second = node("Mgmt2", "IRID", "IRID", "IRID", "FE_ID");
+    DataNode fert = node("Fert", "FE_ID", "FE_ID", "FE_ID", "FEAMN");
+    graph(first, second, fert);
+
+    assertEquals(Arrays.asList(fert), first.references());
+    assertTrue(second.references().isEmpty());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void builtGraphIsFrozen() throws Exception {
+    DataNode weather = node("Weather", "WST_ID", "WST_ID", "WST_ID", "WST_LAT");
+    weather.root("WST_ID");
+    graph(weather).roots().add(weather);
+  }
+
+  private static DataNode node(String name, String indexes, String defines, String... variables) {
+    DataNode n = new DataNode(name);
+    for (String v : variables) {
+      n.addVariable(v);
+    }
+    n.indexes(indexes);
+    if (null != defines) {
+      n.defines(defines);
+    }
+    return n;
+  }
+
+  private static RootedGraph graph(DataNode... nodes) throws Exception {
+    RootedGraph graph = new RootedGraph();
+    for (DataNode n : nodes) {
+      graph.addNode(n);
+    }
+    graph.build();
+    return graph;
+  }
+}
@@ -0,0 +1,130 @@
+package org.agmip.translators.excel.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.agmip.translators.excel.api.handler.CellHandler;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SheetDataTest {
+  private static final String[][] ROWS = {
+      {"ID", "AMOUNT", "CODE", "NOTE"},
+      {"1", "0.05", "10", null},
+      {"2", "-3", "007", "x"},
+      {"3", "123456789012345678", "12"},
+      {"4", null, "1e5", "y"},
+      {"5", "1.50", null, null},
+      {"6"},
+      {"7", "-0.5", "10", "x"},
+      {"8", "0.0", "1234567890123456789"},
+  };
+
+  @Test
+  public void valuesAreKeptAsWritten() {
+    SheetData data = capture(ROWS);
+    assertEquals(ROWS.length, data.size());
+    assertEquals(SheetData.Type.NUMERIC, data.type(0));
+    assertEquals(SheetData.Type.NUMERIC, data.type(1));
+    assertEquals(SheetData.Type.TEXT, data.type(2));
+    assertEquals(SheetData.Type.TEXT, data.type(3));
+    assertArrayEquals(ROWS[0], data.header());
+    for (int r = 1; r < ROWS.length; r++) {
+      assertEquals(ROWS[r].length, data.width(r));
+      for (int c = 0; c < ROWS[r].length; c++) {
+        assertEquals("row " + r + " column " + c, ROWS[r][c], data.value(r, c));
+      }
+    }
+  }
+
+  @Test
+  public void numbersReadLikeTheirText() {
+    SheetData data = capture(ROWS);
+    for (int r = 1; r < ROWS.length; r++) {
+      if (ROWS[r].length > 1 && null != ROWS[r][1]) {
+        assertEquals(Double.parseDouble(ROWS[r][1]), data.number(r, 1), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void columnTurnedToTextKeepsEarlierBlanks() {
+    SheetData data = capture(new String[][] {{"A", "B"}, {"1"}, {"2", null}, {"3", "4"}, {"4", "n/a"}});
+    assertEquals(SheetData.Type.TEXT, data.type(1));
+    assertEquals(1, data.width(1));
+    assertNull(data.value(2, 1));
+    assertEquals("4", data.value(3, 1));
+    assertEquals("n/a", data.value(4, 1));
+  }
+
+  @Test
+  public void replayEmitsTheCapturedCells() throws Exception {
+    final List<String[]> replayed = new ArrayList<>();
+    capture(ROWS).replay(new DefaultHandler() {
+      private String[] row;
+      private int column;
+      private StringBuilder text;
+
+      @Override
+      public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        switch (qName) {
+          case "row":
+            row = new String[0];
+            break;
+          case "c":
+            column = CellHandler.columnIndex(attributes.getValue("r"));
+            break;
+          case "v":
+            text = new StringBuilder();
+            break;
+          default:
+            break;
+        }
+      }
+
+      @Override
+      public void characters(char[] ch, int start, int length) {
+        text.append(ch, start, length);
+      }
+
+      @Override
+      public void endElement(String uri, String localName, String qName) {
+        if (qName.equals("v")) {
+          row = Arrays.copyOf(row, Math.max(row.length, column + 1));
+          row[column] = text.toString();
+        } else if (qName.equals("row")) {
+          replayed.add(row);
+        }
+      }
+    });
+    assertEquals(ROWS.length, replayed.size());
+    for (int r = 0; r < ROWS.length; r++) {
+      assertArrayEquals(trimmed(ROWS[r]), replayed.get(r));
+    }
+  }
+
+  private static SheetData capture(String[][] rows) {
+    SheetData data = new SheetData();
+    for (String[] row : rows) {
+      data.addRow(row);
+    }
+    return data;
+  }
+
+  /**
+   * The row up to its last non-blank cell, which is all a replay can show.
+   */
+  private static String[] trimmed(String[] row) {
+    int width = row.length;
+    while (width > 0 && null == row[width - 1]) {
+      width--;
+    }
+    return Arrays.copyOf(row, width);
+  }
+}
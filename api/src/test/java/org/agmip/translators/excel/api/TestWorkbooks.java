@@ -0,0 +1,69 @@
+package org.agmip.translators.excel.api;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Small workbooks written with POI for the tests.
+ */
+final class TestWorkbooks {
+  private TestWorkbooks() {}
+
+  /**
+   * Experiments with treatments and fertilizer events, weather stations with daily
+   * records and soils with layers.
+   */
+  static File template(File file) throws IOException {
+    return write(file,
+        sheet("Exp", new Object[][] {{"EXNAME", "PI_NAME", "CRID", "WST_ID", "SOIL_ID"},
+            {"E1", "Smith", "MAZ", "W1", "S1"}, {"E2", "Jones", "WHT", "W2", "S2"}}),
+        sheet("Trt", new Object[][] {{"EXNAME", "TRTNO", "TNAME", "FE_ID"},
+            {"E1", 1, "a", "F1"}, {"E1", 2, "b", "F2"}, {"E2", 1, "c", "F1"}}),
+        sheet("Fert", new Object[][] {{"FE_ID", "FEDATE", "FEAMN"},
+            {"F1", 42000, 50}, {"F1", 42010, 25}, {"F2", 42005, 10.5}}),
+        sheet("Weather", new Object[][] {{"WST_ID", "WST_LAT"}, {"W1", 35.5}, {"W2", -12.25}}),
+        sheet("Daily", new Object[][] {{"WST_ID", "W_DATE", "TMAX", "TMIN"},
+            {"W1", 42000, 30.1, 15}, {"W1", 42001, 31.1, 15}, {"W2", 42000, 20, 5.5}}),
+        sheet("Soil", new Object[][] {{"SOIL_ID", "SL_SOURCE"}, {"S1", "lab"}, {"S2", "survey"}}),
+        sheet("Layers", new Object[][] {{"SOIL_ID", "SLLB", "SLOC"},
+            {"S1", 10, 1.2}, {"S1", 30, 0.8}, {"S2", 15, 2}}));
+  }
+
+  static Object[] sheet(String name, Object[][] rows) {
+    return new Object[] {name, rows};
+  }
+
+  /**
+   * Writes sheets given as a name and rows of strings and numbers.
+   */
+  static File write(File file, Object[]... sheets) throws IOException {
+    try (XSSFWorkbook wb = new XSSFWorkbook()) {
+      for (Object[] s : sheets) {
+        Sheet sheet = wb.createSheet((String) s[0]);
+        Object[][] rows = (Object[][]) s[1];
+        for (int r = 0; r < rows.length; r++) {
+          Row row = sheet.createRow(r);
+          for (int c = 0; c < rows[r].length; c++) {
+            if (null == rows[r][c]) continue;
+            Cell cell = row.createCell(c);
+            if (rows[r][c] instanceof Number) {
+              cell.setCellValue(((Number) rows[r][c]).doubleValue());
+            } else {
+              cell.setCellValue((String) rows[r][c]);
+            }
+          }
+        }
+      }
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        wb.write(out);
+      }
+    }
+    return file;
+  }
+}
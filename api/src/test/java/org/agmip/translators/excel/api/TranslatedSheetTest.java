@@ -0,0 +1,78 @@
+package org.agmip.translators.excel.api;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.agmip.ace.AceComponent;
+import org.agmip.translators.excel.api.handler.IngestionHandler;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class TranslatedSheetTest {
+  private static DataNode ingest(String[]... rows) throws Exception {
+    DataNode node = new DataNode("Exp");
+    IngestionHandler handler = new IngestionHandler(node, SharedStrings.EMPTY);
+    handler.startDocument();
+    for (String[] row : rows) {
+      handler.addRow(row, row.length);
+    }
+    return node;
+  }
+
+  @Test
+  public void commentColumnsDoNotShiftVariables() throws Exception {
+    DataNode node = ingest(
+        new String[] {"EXNAME", "!NOTE", "PI_NAME", "CRID"},
+        new String[] {"E1", "first", "Smith", "MAZ"},
+        new String[] {"E2", null, "Jones", "WHT"});
+    node.freeze(new HashSet<>());
+
+    TranslatedSheet sheet = TranslatedSheet.of(node, false);
+    assertEquals(2, sheet.size());
+    List<AceComponent> rows = sheet.components();
+    assertEquals("E1", rows.get(0).getValue("EXNAME"));
+    assertEquals("Smith", rows.get(0).getValue("PI_NAME"));
+    assertEquals("MAZ", rows.get(0).getValue("CRID"));
+    assertEquals("Jones", rows.get(1).getValue("PI_NAME"));
+    assertEquals("WHT", rows.get(1).getValue("CRID"));
+    assertFalse(rows.get(0).keySet().contains("!NOTE"));
+  }
+
+  @Test
+  public void valuesPastTheLastVariableAreSkipped() throws Exception {
+    DataNode node = ingest(
+        new String[] {"FE_ID", "FEDATE", "FEAMN", null, "!COMMENT"},
+        new String[] {"F1", "42000", "50"},
+        new String[] {"F1", "42010", "25", null, "late", "unnamed"},
+        new String[] {"F2", "42005", "10.5"});
+    node.freeze(new HashSet<>());
+
+    TranslatedSheet sheet = TranslatedSheet.of(node, false);
+    assertEquals(3, sheet.size());
+    List<AceComponent> rows = sheet.components();
+    assertEquals(new HashSet<>(Arrays.asList("FE_ID", "FEDATE", "FEAMN")), rows.get(1).keySet());
+    assertEquals("25", rows.get(1).getValue("FEAMN"));
+    assertEquals("F2", rows.get(2).getValue("FE_ID"));
+  }
+
+  @Test
+  public void blankCellsAreLeftOut() throws Exception {
+    DataNode node = ingest(
+        new String[] {"WST_ID", "W_DATE", "SRAD", "TMAX"},
+        new String[] {"W1", "43101", null, "30.5"},
+        new String[] {"W1", null, "12.0"});
+
+    TranslatedSheet sheet = TranslatedSheet.of(node, false);
+    assertEquals(2, sheet.size());
+    List<AceComponent> rows = sheet.components();
+    assertEquals("2018-01-01", rows.get(0).getValue("W_DATE"));
+    assertNull(rows.get(0).getValue("SRAD"));
+    assertEquals("30.5", rows.get(0).getValue("TMAX"));
+    assertNull(rows.get(1).getValue("W_DATE"));
+    assertEquals("12.0", rows.get(1).getValue("SRAD"));
+  }
+}
@@ -0,0 +1,65 @@
+package org.agmip.translators.excel.api;
+
+import java.io.File;
+import java.io.ObjectOutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.agmip.translators.excel.api.io.AcebWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TranslationPlanCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void storedPlanIsLoaded() throws Exception {
+    TranslationPlanCache cache = new TranslationPlanCache(folder.newFolder("plans").toPath());
+    File workbook = TestWorkbooks.template(folder.newFile("template.xlsx"));
+    try (ExcelModel model = new ExcelModel(workbook.toPath())) {
+      model.planCache(cache);
+      model.init();
+      try (AcebWriter writer = new AcebWriter(folder.newFile("out.aceb").toPath())) {
+        model.run(writer);
+      }
+    }
+    List<Path> plans = plans(cache);
+    assertEquals(1, plans.size());
+    String fingerprint = plans.get(0).getFileName().toString().replace(".plan", "");
+    TranslationPlan plan = cache.load(fingerprint);
+    assertNotNull(plan);
+    assertEquals(fingerprint, plan.fingerprint());
+    assertEquals(7, plan.sheets().size());
+  }
+
+  @Test
+  public void otherClassesAreNotDeserialized() throws Exception {
+    TranslationPlanCache cache = new TranslationPlanCache(folder.newFolder("plans").toPath());
+    HashMap<String, String> planted = new HashMap<>();
+    planted.put("fingerprint", "abc");
+    try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(cache.directory().resolve("abc.plan")))) {
+      out.writeObject(planted);
+    }
+    assertNull(cache.load("abc"));
+  }
+
+  private static List<Path> plans(TranslationPlanCache cache) throws Exception {
+    List<Path> plans = new ArrayList<>();
+    try (DirectoryStream<Path> dir = Files.newDirectoryStream(cache.directory(), "*.plan")) {
+      for (Path p : dir) {
+        plans.add(p);
+      }
+    }
+    return plans;
+  }
+}
@@ -0,0 +1,81 @@
+package org.agmip.translators.excel.api;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TranslationPlanTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void fingerprintIsAHexDigest() {
+    String fingerprint = TranslationPlan.fingerprint(headers(new String[] {"Exp", "EXNAME", "CRID"}));
+    assertTrue(fingerprint, fingerprint.matches("[0-9a-f]{64}"));
+    assertEquals(fingerprint, TranslationPlan.fingerprint(headers(new String[] {"Exp", "EXNAME", "CRID"})));
+  }
+
+  @Test
+  public void fingerprintKeepsCellAndSheetBoundaries() {
+    assertNotEquals(
+        TranslationPlan.fingerprint(headers(new String[] {"Exp", "EX", "NAME"})),
+        TranslationPlan.fingerprint(headers(new String[] {"Exp", "EXNAME"})));
+    assertNotEquals(
+        TranslationPlan.fingerprint(headers(new String[] {"Exp", "EXNAME"}, new String[] {"Trt"})),
+        TranslationPlan.fingerprint(headers(new String[] {"Exp", "EXNAME", "Trt"})));
+    assertNotEquals(
+        TranslationPlan.fingerprint(headers(new String[] {"Exp", "EXNAME"}, new String[] {"Trt", "TRTNO"})),
+        TranslationPlan.fingerprint(headers(new String[] {"Trt", "TRTNO"}, new String[] {"Exp", "EXNAME"})));
+  }
+
+  @Test
+  public void workbooksOfTheSameTemplateShareAPlan() throws Exception {
+    TranslationPlan template = plan(TestWorkbooks.template(folder.newFile("template.xlsx")));
+    TranslationPlan other = plan(otherData(folder.newFile("other.xlsx"), "TMIN"));
+    assertEquals(template.fingerprint(), other.fingerprint());
+
+    TranslationPlan renamed = plan(otherData(folder.newFile("renamed.xlsx"), "SRAD"));
+    assertNotEquals(template.fingerprint(), renamed.fingerprint());
+  }
+
+  /**
+   * The sheets and headers of the template, with other data and the given last column
+   * of the daily weather.
+   */
+  private static File otherData(File file, String dailyColumn) throws Exception {
+    return TestWorkbooks.write(file,
+        TestWorkbooks.sheet("Exp", new Object[][] {{"EXNAME", "PI_NAME", "CRID", "WST_ID", "SOIL_ID"},
+            {"E7", "Lee", "RIC", "W7", "S7"}}),
+        TestWorkbooks.sheet("Trt", new Object[][] {{"EXNAME", "TRTNO", "TNAME", "FE_ID"},
+            {"E7", 1, "z", "F7"}, {"E7", 2, "y", "F7"}}),
+        TestWorkbooks.sheet("Fert", new Object[][] {{"FE_ID", "FEDATE", "FEAMN"}, {"F7", 43000, 5}}),
+        TestWorkbooks.sheet("Weather", new Object[][] {{"WST_ID", "WST_LAT"}, {"W7", 10}}),
+        TestWorkbooks.sheet("Daily", new Object[][] {{"WST_ID", "W_DATE", "TMAX", dailyColumn}, {"W7", 43000, 25, 12}}),
+        TestWorkbooks.sheet("Soil", new Object[][] {{"SOIL_ID", "SL_SOURCE"}, {"S7", "lab"}}),
+        TestWorkbooks.sheet("Layers", new Object[][] {{"SOIL_ID", "SLLB", "SLOC"}, {"S7", 20, 1}}));
+  }
+
+  private static List<List<String>> headers(String[]... sheets) {
+    List<List<String>> headers = new ArrayList<>();
+    for (String[] sheet : sheets) {
+      headers.add(Arrays.asList(sheet));
+    }
+    return headers;
+  }
+
+  private static TranslationPlan plan(File workbook) throws Exception {
+    try (ExcelModel model = new ExcelModel(workbook.toPath())) {
+      model.init();
+      return model.plan();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package org.agmip.translators.excel.api.handler;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.agmip.translators.excel.api.DataNode;
+import org.agmip.translators.excel.api.SharedStrings;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FirstPassDataHandlerTest {
+  @Test
+  public void duplicateInsideTheSampleReferencesTheIndex() throws Exception {
+    DataNode node = firstPass(sheet(200, 50), 100);
+    assertFalse(node.doesDefine());
+    assertEquals("FE_ID", node.indexes());
+  }
+
+  @Test
+  public void sampleLimitDefinesTheIndex() throws Exception {
+    List<String> defined = new ArrayList<>();
+    DataNode node = firstPass(sheet(200, 150), 100, defined);
+    assertTrue(node.doesDefine());
+    assertEquals("FE_ID", node.defines().get());
+    assertEquals("FE_ID", node.indexes());
+    assertEquals(1, defined.size());
+  }
+
+  @Test
+  public void duplicatePastTheSampleIsFoundWithoutALimit() throws Exception {
+    DataNode node = firstPass(sheet(200, 150), FirstPassDataHandler.DEFAULT_SAMPLE_LIMIT);
+    assertFalse(node.doesDefine());
+    assertEquals("FE_ID", node.indexes());
+  }
+
+  @Test
+  public void distinctSheetDefinesTheIndex() throws Exception {
+    DataNode node = firstPass(sheet(200, -1), FirstPassDataHandler.DEFAULT_SAMPLE_LIMIT);
+    assertTrue(node.doesDefine());
+    assertEquals("FE_ID", node.defines().get());
+  }
+
+  private static DataNode firstPass(String sheet, int sampleLimit) throws Exception {
+    return firstPass(sheet, sampleLimit, new ArrayList<String>());
+  }
+
+  private static DataNode firstPass(String sheet, int sampleLimit, List<String> defined) throws Exception {
+    DataNode node = new DataNode("Fert");
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    new FirstPassDataHandler(node, 1, defined, SharedStrings.EMPTY, sampleLimit)
+        .parse(factory.newSAXParser().getXMLReader(), new InputSource(new StringReader(sheet)));
+    return node;
+  }
+
+  /**
+   * A sheet of distinct FE_ID values, except for the data row at {@code duplicateRow},
+   * which repeats the first one.
+   */
+  private static String sheet(int rows, int duplicateRow) {
+    StringBuilder xml = new StringBuilder("<worksheet><sheetData>");
+    xml.append("<row r=\"1\"><c r=\"A1\" t=\"str\"><v>FE_ID</v></c><c r=\"B1\" t=\"str\"><v>FEAMN</v></c></row>");
+    for (int r = 1; r <= rows; r++) {
+      String id = (r == duplicateRow) ? "F1" : "F" + r;
+      xml.append("<row r=\"").append(r + 1).append("\">")
+          .append("<c r=\"A").append(r + 1).append("\" t=\"str\"><v>").append(id).append("</v></c>")
+          .append("<c r=\"B").append(r + 1).append("\"><v>").append(r).append("</v></c>")
+          .append("</row>");
+    }
+    return xml.append("</sheetData></worksheet>").toString();
+  }
+}
@@ -0,0 +1,186 @@
+package org.agmip.translators.excel.api.handler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.agmip.translators.excel.api.SharedStrings;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * The scanner must hand a {@link CellHandler} the same rows, columns and values as the
+ * SAX parser it replaces. The scanner is fed a few bytes per read so tokens straddle its
+ * buffer.
+ */
+public class WorksheetScannerTest {
+  private static final String SHEET = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+      + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">";
+  private static SharedStrings strings;
+
+  @BeforeClass
+  public static void loadSharedStrings() throws Exception {
+    String xml = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+        + "<si><t>zero</t></si><si><t>one &amp; two</t></si><si><r><t>rich </t></r><r><t>text</t></r></si></sst>";
+    strings = SharedStrings.load(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), SharedStrings.Storage.HEAP);
+  }
+
+  @Test
+  public void sparseReferences() throws Exception {
+    assertConforms("[0=b 3=e 4=next 26=aa 51=az 52=ba]\n[701=zz 702=aaa 2=back]\nEND\n",
+        sheet("<row r=\"1\"><c r=\"A1\"><v>b</v></c><c r=\"D1\"><v>e</v></c><c><v>next</v></c>"
+            + "<c r=\"AA1\"><v>aa</v></c><c r=\"AZ1\"><v>az</v></c><c r=\"BA1\"><v>ba</v></c></row>"
+            + "<row r=\"3\"><c r=\"ZZ3\"><v>zz</v></c><c r=\"AAA3\"><v>aaa</v></c><c r=\"C3\"><v>back</v></c></row>"));
+  }
+
+  @Test
+  public void cellsWithoutReferences() throws Exception {
+    assertConforms("[0=a 1=b 2=c]\n[3=d 4=e 16383=last]\nEND\n",
+        sheet("<row><c><v>a</v></c><c><v>b</v></c><c><v>c</v></c></row>"
+            + "<row><c s=\"1\" r=\"D7\"><v>d</v></c><c><v>e</v></c><c r = \"XFD7\" ><v>last</v></c></row>"));
+  }
+
+  @Test
+  public void sharedStrings() throws Exception {
+    assertConforms("[0=zero 1=one & two 2=rich text 3=2.5]\nEND\n",
+        sheet("<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" t=\"s\"><v>1</v></c>"
+            + "<c r=\"C1\" t = 's'><v>2</v></c><c r=\"D1\"><v>2.5</v></c></row>"));
+  }
+
+  @Test
+  public void characterAndEntityReferences() throws Exception {
+    assertConforms("[0=a&b <> \"' AB \uD83D\uDE00]\nEND\n",
+        sheet("<row><c t=\"str\"><v>a&amp;b &lt;&gt; &quot;&apos; &#65;&#x42; &#x1F600;</v></c></row>"));
+  }
+
+  @Test
+  public void cdataEndingInBracket() throws Exception {
+    assertConforms("[0=x]]y<z] 1=]]]]\nEND\n",
+        sheet("<row><c><v><![CDATA[x]]y<z]]]></v></c><c><v><![CDATA[]]]]><![CDATA[]]]></v></c></row>"));
+  }
+
+  @Test
+  public void lineEndingsAreNormalized() throws Exception {
+    assertConforms("[0=line1\\nline2\\nline3\\nline4\\r 1=é漢字\uD83D\uDE00]\nEND\n",
+        sheet("<row><c><v>line1\r\nline2\rline3\nline4&#13;</v></c><c><v>é漢字\uD83D\uDE00</v></c></row>"));
+  }
+
+  @Test
+  public void emptyRowsCellsAndValues() throws Exception {
+    assertConforms("[]\n[2= 3=3]\nEND\n",
+        sheet("<row/><row r=\"2\"><c r=\"A2\"/><c r=\"B2\" t=\"s\"/><c r=\"C2\"><v/></c>"
+            + "<c r=\"D2\"><f>SUM(A1)</f><v>3</v></c></row>"));
+  }
+
+  @Test
+  public void byteOrderMark() throws Exception {
+    assertConforms("[0=zero 2=3]\nEND\n",
+        "\uFEFF<?xml version='1.0' encoding='utf-8'?>\n" + SHEET
+            + "<sheetData><row r='1'><c r='A1' t='s'><v>0</v></c><c r='C1'><v>3</v></c></row></sheetData></worksheet>");
+  }
+
+  @Test
+  public void stopsWhenTheHandlerFinishes() throws Exception {
+    String xml = sheet("<row><c><v>1</v></c></row><row><c><v>2</v></c></row><row><c><v>3</v></c></row>");
+    assertEquals("[0=1]\n[0=2]\n", sax(bytes(xml), 2));
+    assertEquals("[0=1]\n[0=2]\n", scan(bytes(xml), 2));
+  }
+
+  @Test
+  public void otherEncodingsAreRejected() throws Exception {
+    String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" + SHEET
+        + "<sheetData><row><c t=\"str\"><v>café</v></c></row></sheetData></worksheet>";
+    byte[] latin1 = xml.getBytes(Charset.forName("ISO-8859-1"));
+    assertEquals("[0=café]\nEND\n", sax(latin1, -1));
+    try {
+      scan(latin1, -1);
+      fail("A worksheet declared in ISO-8859-1 was read as UTF-8");
+    } catch (IOException expected) {
+    }
+  }
+
+  private static String sheet(String rows) {
+    return SHEET + "<sheetData>" + rows + "</sheetData></worksheet>";
+  }
+
+  private static byte[] bytes(String xml) {
+    return xml.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void assertConforms(String expected, String xml) throws Exception {
+    assertEquals(expected, sax(bytes(xml), -1));
+    assertEquals(expected, scan(bytes(xml), -1));
+  }
+
+  private static String sax(byte[] xml, int rows) throws Exception {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader parser = factory.newSAXParser().getXMLReader();
+    Recorder recorder = new Recorder(rows);
+    recorder.parse(parser, new InputSource(new ByteArrayInputStream(xml)));
+    return recorder.cells.toString();
+  }
+
+  private static String scan(byte[] xml, int rows) throws Exception {
+    Recorder recorder = new Recorder(rows);
+    new WorksheetScanner().scan(new Trickle(xml), recorder);
+    return recorder.cells.toString();
+  }
+
+  private static class Recorder extends CellHandler {
+    private final StringBuilder cells = new StringBuilder();
+    private int rows;
+
+    private Recorder(int rows) {
+      super(strings);
+      this.rows = rows;
+    }
+
+    @Override
+    protected void startRow() {
+      cells.append('[');
+    }
+
+    @Override
+    protected void cell(int column) {
+      if (cells.charAt(cells.length() - 1) != '[') {
+        cells.append(' ');
+      }
+      cells.append(column).append('=').append(value().replace("\r", "\\r").replace("\n", "\\n"));
+    }
+
+    @Override
+    protected void endRow() {
+      cells.append("]\n");
+      if (--rows == 0) {
+        finish();
+      }
+    }
+
+    @Override
+    protected void endSheet() {
+      cells.append("END\n");
+    }
+  }
+
+  /**
+   * Returns at most seven bytes per read.
+   */
+  private static class Trickle extends ByteArrayInputStream {
+    private Trickle(byte[] buf) {
+      super(buf);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 7));
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package org.agmip.translators.excel.api.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.agmip.ace.AceDataset;
+import org.agmip.ace.AceExperiment;
+import org.agmip.ace.AceSoil;
+import org.agmip.ace.AceWeather;
+import org.agmip.ace.io.AceGenerator;
+import org.agmip.ace.io.AceParser;
+import org.agmip.translators.excel.api.ExcelModel;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The streamed ACEB document must read back as the same dataset ace-core writes for the
+ * collected {@link AceDataset}.
+ */
+public class AcebWriterTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void matchesAceGenerator() throws Exception {
+    File workbook = workbook(folder.newFile("template.xlsx"));
+    File generated = folder.newFile("generated.aceb");
+    File streamed = folder.newFile("streamed.aceb");
+
+    try (ExcelModel model = new ExcelModel(workbook.toPath())) {
+      model.init();
+      AceGenerator.generateACEB(generated, model.run());
+    }
+    try (ExcelModel model = new ExcelModel(workbook.toPath())) {
+      model.init();
+      try (AcebWriter writer = new AcebWriter(streamed.toPath())) {
+        model.run(writer);
+      }
+    }
+
+    AceDataset expected = AceParser.parseACEB(generated);
+    AceDataset actual = AceParser.parseACEB(streamed);
+    assertFalse(expected.getExperiments().isEmpty());
+    assertEquals(experimentIds(expected), experimentIds(actual));
+    assertEquals(weatherIds(expected), weatherIds(actual));
+    assertEquals(soilIds(expected), soilIds(actual));
+  }
+
+  @Test
+  public void interleavedSectionsAreRegrouped() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (AcebWriter writer = new AcebWriter(out)) {
+      assertFalse(writer.started());
+      writer.weather(bytes("{\"w\":1}"));
+      assertTrue(writer.started());
+      writer.experiment(bytes("{\"e\":1}"));
+      writer.weather(bytes("{\"w\":2}"));
+      writer.experiment(bytes("{\"e\":2}"));
+    }
+    assertEquals("{\"weathers\":[{\"w\":1},{\"w\":2}],\"experiments\":[{\"e\":1},{\"e\":2}],\"soils\":[]}",
+        gunzip(out.toByteArray()));
+  }
+
+  @Test
+  public void emptyRunIsAnEmptyDocument() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new AcebWriter(out).close();
+    assertEquals("{\"experiments\":[],\"soils\":[],\"weathers\":[]}", gunzip(out.toByteArray()));
+  }
+
+  @Test
+  public void discardLeavesNoDocument() throws Exception {
+    File streamed = folder.newFile("discarded.aceb");
+    AcebWriter writer = new AcebWriter(streamed.toPath());
+    writer.experiment(new byte[] {'{', '}'});
+    writer.discard();
+    writer.close();
+    assertEquals(0L, streamed.length());
+  }
+
+  private static byte[] bytes(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String gunzip(byte[] aceb) throws IOException {
+    ByteArrayOutputStream json = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(aceb))) {
+      byte[] buf = new byte[8192];
+      for (int n; (n = in.read(buf)) > 0; ) {
+        json.write(buf, 0, n);
+      }
+    }
+    return new String(json.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static List<String> experimentIds(AceDataset ds) throws IOException {
+    List<String> ids = new ArrayList<>();
+    for (AceExperiment e : ds.getExperiments()) {
+      ids.add(e.getId() + " " + e.getValueOr("wid", "") + " " + e.getValueOr("sid", ""));
+    }
+    Collections.sort(ids);
+    return ids;
+  }
+
+  private static List<String> weatherIds(AceDataset ds) throws IOException {
+    List<String> ids = new ArrayList<>();
+    for (AceWeather w : ds.getWeathers()) {
+      ids.add(w.getId());
+    }
+    Collections.sort(ids);
+    return ids;
+  }
+
+  private static List<String> soilIds(AceDataset ds) throws IOException {
+    List<String> ids = new ArrayList<>();
+    for (AceSoil s : ds.getSoils()) {
+      ids.add(s.getId());
+    }
+    Collections.sort(ids);
+    return ids;
+  }
+
+  private static File workbook(File file) throws IOException {
+    try (XSSFWorkbook wb = new XSSFWorkbook()) {
+      sheet(wb, "Exp", new Object[][] {{"EXNAME", "PI_NAME", "CRID", "WST_ID", "SOIL_ID"},
+          {"E1", "Smith", "MAZ", "W1", "S1"}, {"E2", "Jones", "WHT", "W2", "S2"}});
+      sheet(wb, "Trt", new Object[][] {{"EXNAME", "TRTNO", "TNAME", "FE_ID"},
+          {"E1", 1, "a", "F1"}, {"E1", 2, "b", "F2"}, {"E2", 1, "c", "F1"}});
+      sheet(wb, "Fert", new Object[][] {{"FE_ID", "FEDATE", "FEAMN"},
+          {"F1", 42000, 50}, {"F1", 42010, 25}, {"F2", 42005, 10.5}});
+      sheet(wb, "Weather", new Object[][] {{"WST_ID", "WST_LAT"}, {"W1", 35.5}, {"W2", -12.25}});
+      sheet(wb, "Daily", new Object[][] {{"WST_ID", "W_DATE", "TMAX", "TMIN"},
+          {"W1", 42000, 30.1, 15}, {"W1", 42001, 31.1, 15}, {"W2", 42000, 20, 5.5}});
+      sheet(wb, "Soil", new Object[][] {{"SOIL_ID", "SL_SOURCE"}, {"S1", "lab"}, {"S2", "survey"}});
+      sheet(wb, "Layers", new Object[][] {{"SOIL_ID", "SLLB", "SLOC"},
+          {"S1", 10, 1.2}, {"S1", 30, 0.8}, {"S2", 15, 2}});
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        wb.write(out);
+      }
+    }
+    return file;
+  }
+
+  private static void sheet(XSSFWorkbook wb, String name, Object[][] rows) {
+    Sheet sheet = wb.createSheet(name);
+    for (int r = 0; r < rows.length; r++) {
+      Row row = sheet.createRow(r);
+      for (int c = 0; c < rows[r].length; c++) {
+        Cell cell = row.createCell(c);
+        if (rows[r][c] instanceof Number) {
+          cell.setCellValue(((Number) rows[r][c]).doubleValue());
+        } else {
+          cell.setCellValue((String) rows[r][c]);
+        }
+      }
+    }
+  }
+}
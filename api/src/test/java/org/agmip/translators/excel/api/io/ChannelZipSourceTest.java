@@ -0,0 +1,119 @@
+package org.agmip.translators.excel.api.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChannelZipSourceTest {
+  @Test
+  public void readsEntries() throws Exception {
+    byte[] noise = new byte[300 * 1024];
+    new Random(7).nextBytes(noise);
+    byte[] text = "<worksheet/>".getBytes(StandardCharsets.UTF_8);
+    try (ChannelZipSource source = open(zip(false, entry("xl/noise.bin", noise), entry("xl/sheet1.xml", text)))) {
+      assertEquals(noise.length, readAll(source, "xl/noise.bin"));
+      assertEquals(text.length, readAll(source, "xl/sheet1.xml"));
+    }
+  }
+
+  @Test
+  public void highRatioEntryIsRejected() throws Exception {
+    byte[] zeros = new byte[20 * 1024 * 1024];
+    try (ChannelZipSource source = open(zip(false, entry("xl/worksheets/sheet1.xml", zeros)))) {
+      readAll(source, "xl/worksheets/sheet1.xml");
+      fail("A 20 MB entry of zeros was inflated");
+    } catch (ZipException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("Zip bomb"));
+    }
+  }
+
+  @Test
+  public void entryLargerThanDeclaredIsRejected() throws Exception {
+    byte[] noise = new byte[64 * 1024];
+    new Random(11).nextBytes(noise);
+    for (boolean stored : new boolean[] {false, true}) {
+      byte[] zip = zip(stored, entry("xl/noise.bin", noise));
+      declareSize(zip, 1024);
+      try (ChannelZipSource source = open(zip)) {
+        readAll(source, "xl/noise.bin");
+        fail("An entry declared as 1 KB inflated to " + noise.length + " bytes");
+      } catch (ZipException expected) {
+        assertTrue(expected.getMessage(), expected.getMessage().contains("declared size"));
+      }
+    }
+  }
+
+  private static Object[] entry(String name, byte[] data) {
+    return new Object[] {name, data};
+  }
+
+  private static byte[] zip(boolean stored, Object[]... entries) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(out)) {
+      for (Object[] e : entries) {
+        byte[] data = (byte[]) e[1];
+        ZipEntry entry = new ZipEntry((String) e[0]);
+        if (stored) {
+          CRC32 crc = new CRC32();
+          crc.update(data);
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(data.length);
+          entry.setCompressedSize(data.length);
+          entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Rewrites the uncompressed size of every central directory entry.
+   */
+  private static void declareSize(byte[] zip, int size) {
+    ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+    for (int p = 0; p + 46 <= zip.length; p++) {
+      if (buffer.getInt(p) == 0x02014b50) {
+        buffer.putInt(p + 24, size);
+      }
+    }
+  }
+
+  private static ChannelZipSource open(byte[] zip) throws IOException {
+    return new ChannelZipSource(new ByteBufferChannel(ByteBuffer.wrap(zip)));
+  }
+
+  private static long readAll(ChannelZipSource source, String name) throws IOException {
+    ZipEntry entry = null;
+    for (ZipEntry e : Collections.list(source.getEntries())) {
+      if (e.getName().equals(name)) {
+        entry = e;
+      }
+    }
+    long total = 0;
+    try (InputStream in = source.getInputStream(entry)) {
+      byte[] buffer = new byte[8192];
+      for (int n; (n = in.read(buffer)) > 0; ) {
+        total += n;
+      }
+    }
+    return total;
+  }
+}
@@ -0,0 +1,70 @@
+package org.agmip.translators.excel.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.agmip.ace.AceDataset;
+import org.agmip.translators.excel.api.ExcelModel;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * End to end cost of {@link ExcelModel#init()} and {@link ExcelModel#run()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExcelModelBenchmark {
+  @Param({"EXPERIMENT", "WEATHER_DAILY", "SOIL_LAYER"})
+  public WorkbookGenerator.Template template;
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  private Path workbook;
+  private byte[] bytes;
+  private ExcelModel initialized;
+
+  @Setup(Level.Trial)
+  public void generate() throws Exception {
+    workbook = WorkbookGenerator.generate(template, size);
+    bytes = Files.readAllBytes(workbook);
+  }
+
+  @Setup(Level.Invocation)
+  public void prepare() throws Exception {
+    initialized = new ExcelModel(workbook);
+    initialized.init();
+  }
+
+  @TearDown(Level.Invocation)
+  public void release() throws Exception {
+    initialized.close();
+  }
+
+  @TearDown(Level.Trial)
+  public void cleanup() throws Exception {
+    Files.deleteIfExists(workbook);
+  }
+
+  @Benchmark
+  public long init() throws Exception {
+    try (ExcelModel model = new ExcelModel(workbook)) {
+      model.init();
+      return model.rows();
+    }
+  }
+
+  @Benchmark
+  public long initFromMemory() throws Exception {
+    try (ExcelModel model = new ExcelModel(bytes)) {
+      model.init();
+      return model.rows();
+    }
+  }
+
+  @Benchmark
+  public AceDataset run() throws Exception {
+    return initialized.run();
+  }
+}
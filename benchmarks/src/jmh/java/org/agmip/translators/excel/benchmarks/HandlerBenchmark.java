@@ -0,0 +1,135 @@
+package org.agmip.translators.excel.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.agmip.ace.AceComponent;
+import org.agmip.translators.excel.api.DataNode;
+import org.agmip.translators.excel.api.RootedGraph;
+import org.agmip.translators.excel.api.SharedStrings;
+import org.agmip.translators.excel.api.handler.*;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Every SAX handler of {@code org.agmip.translators.excel.api.handler} over the inflated
+ * parts of a generated workbook, so zip inflation is left out of the measurement. The
+ * sheet handlers parse the largest sheet of the template.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HandlerBenchmark {
+  @Param({"EXPERIMENT", "WEATHER_DAILY", "SOIL_LAYER"})
+  public WorkbookGenerator.Template template;
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  private byte[] workbookPart;
+  private byte[] stringsPart;
+  private byte[] sheetPart;
+  private SharedStrings strings;
+  private DataNode header;
+  private XMLReader parser;
+
+  @Setup(Level.Trial)
+  public void extract() throws Exception {
+    Path file = WorkbookGenerator.generate(template, size);
+    try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+      XSSFReader reader = new XSSFReader(pkg);
+      workbookPart = read(reader.getWorkbookData());
+      stringsPart = read(reader.getSharedStringsData());
+      XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+      while (sheets.hasNext()) {
+        byte[] part = read(sheets.next());
+        if (null == sheetPart || part.length > sheetPart.length) {
+          sheetPart = part;
+        }
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+    strings = SharedStrings.load(new ByteArrayInputStream(stringsPart), SharedStrings.Storage.HEAP);
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    parser = factory.newSAXParser().getXMLReader();
+    header = new DataNode("bench");
+    parse(sheetPart, new VariableHandler(header, strings));
+    header.indexes(header.variables().get(0));
+  }
+
+  private static byte[] read(InputStream in) throws Exception {
+    try (InputStream stream = in) {
+      return IOUtils.toByteArray(stream);
+    }
+  }
+
+  private void parse(byte[] part, ContentHandler handler) throws Exception {
+    parser.setContentHandler(handler);
+    parser.parse(new InputSource(new ByteArrayInputStream(part)));
+  }
+
+  private void parse(byte[] part, CellHandler handler) throws Exception {
+    handler.parse(parser, new InputSource(new ByteArrayInputStream(part)));
+  }
+
+  @Benchmark
+  public RootedGraph sheetHandler() throws Exception {
+    RootedGraph graph = new RootedGraph();
+    parse(workbookPart, new SheetHandler(graph, null));
+    return graph;
+  }
+
+  @Benchmark
+  public SharedStrings sharedStringsHandler() throws Exception {
+    return SharedStrings.load(new ByteArrayInputStream(stringsPart), SharedStrings.Storage.HEAP);
+  }
+
+  @Benchmark
+  public DataNode variableHandler() throws Exception {
+    DataNode node = new DataNode("bench");
+    parse(sheetPart, new VariableHandler(node, strings));
+    return node;
+  }
+
+  @Benchmark
+  public DataNode ingestionHandler() throws Exception {
+    DataNode node = new DataNode("bench");
+    parse(sheetPart, new IngestionHandler(node, strings));
+    return node;
+  }
+
+  @Benchmark
+  public DataNode firstPassDataHandler() throws Exception {
+    DataNode node = new DataNode("bench");
+    parse(sheetPart, new FirstPassDataHandler(node, 1, new ArrayList<>(), strings));
+    return node;
+  }
+
+  @Benchmark
+  public DataHandler dataHandler() throws Exception {
+    DataHandler handler = new DataHandler(1, strings);
+    parse(sheetPart, handler);
+    return handler;
+  }
+
+  @Benchmark
+  public List<AceComponent> translationHandler() throws Exception {
+    List<AceComponent> translated = new ArrayList<>();
+    parse(sheetPart, new TranslationHandler(header, translated, strings));
+    return translated;
+  }
+}
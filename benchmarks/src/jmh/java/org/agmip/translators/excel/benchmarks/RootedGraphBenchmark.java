@@ -0,0 +1,56 @@
+package org.agmip.translators.excel.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.agmip.translators.excel.api.DataNode;
+import org.agmip.translators.excel.api.RootedGraph;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * {@link RootedGraph#build()} over multi-site templates: every site contributes an
+ * experiment root, a treatment child, an observation grandchild and a referenced
+ * management sheet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RootedGraphBenchmark {
+  @Param({"10", "100", "500"})
+  public int sites;
+
+  private RootedGraph graph;
+
+  @Setup(Level.Invocation)
+  public void prepare() {
+    graph = new RootedGraph();
+    for (int s = 0; s < sites; s++) {
+      String exp = "EXNAME";
+      String trt = "TRT" + s;
+      String man = "MAN" + s;
+      DataNode root = node("Experiments" + s, exp, exp, exp, "PI_NAME", "CRID");
+      root.root(exp);
+      graph.addNode(root);
+      graph.addNode(node("Treatments" + s, exp + "," + trt, exp + "," + trt, exp, trt, man, "TNAME"));
+      graph.addNode(node("Observed" + s, null, exp + "," + trt, exp, trt, "HWAM"));
+      graph.addNode(node("Management" + s, man, man, man, "PDATE", "PLPOP"));
+    }
+  }
+
+  private static DataNode node(String name, String defines, String indexes, String... variables) {
+    DataNode n = new DataNode(name);
+    for (String v : variables) {
+      n.addVariable(v);
+    }
+    if (null != defines) {
+      n.defines(defines);
+    }
+    n.indexes(indexes);
+    return n;
+  }
+
+  @Benchmark
+  public RootedGraph build() throws Exception {
+    graph.build();
+    return graph;
+  }
+}
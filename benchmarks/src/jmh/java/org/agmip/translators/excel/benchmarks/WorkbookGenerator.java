@@ -0,0 +1,129 @@
+package org.agmip.translators.excel.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Writes synthetic workbooks shaped like the AgMIP templates.
+ *
+ * The size is the number of rows of the largest sheet of the template: treatments for
+ * {@link Template#EXPERIMENT}, daily records for {@link Template#WEATHER_DAILY} and
+ * layers for {@link Template#SOIL_LAYER}. Strings go through the shared strings table,
+ * like workbooks saved by Excel.
+ */
+public class WorkbookGenerator {
+  public enum Template { EXPERIMENT, WEATHER_DAILY, SOIL_LAYER }
+
+  private static final int FIRST_DAY = 36526; // 2000-01-01
+
+  public static Path generate(Template template, int size) throws IOException {
+    Path file = Files.createTempFile("bench-" + template.name().toLowerCase() + "-" + size, ".xlsx");
+    generate(template, size, file);
+    return file;
+  }
+
+  public static void generate(Template template, int size, Path file) throws IOException {
+    SXSSFWorkbook wb = new SXSSFWorkbook(null, 1000, true, true);
+    try {
+      switch (template) {
+        case EXPERIMENT:
+          experiment(wb, size);
+          break;
+        case WEATHER_DAILY:
+          weather(wb, size);
+          break;
+        case SOIL_LAYER:
+          soil(wb, size);
+          break;
+      }
+      try (OutputStream out = Files.newOutputStream(file)) {
+        wb.write(out);
+      }
+    } finally {
+      wb.dispose();
+    }
+  }
+
+  private static void experiment(SXSSFWorkbook wb, int treatments) {
+    int experiments = Math.max(1, treatments / 10);
+    int fertilizers = Math.max(1, treatments / 20);
+    Sheet exp = sheet(wb, "Experiments", "EXNAME", "PI_NAME", "CRID", "SITE");
+    for (int e = 0; e < experiments; e++) {
+      row(exp, e + 1, "EXP" + e, "PI" + (e % 7), (e % 2 == 0) ? "MAZ" : "WHT", "SITE" + (e % 13));
+    }
+    Sheet trt = sheet(wb, "Treatments", "EXNAME", "TRTNO", "TNAME", "FE_ID");
+    for (int t = 0; t < treatments; t++) {
+      row(trt, t + 1, "EXP" + (t % experiments), (t / experiments) + 1, "T" + t, "FE" + (t % fertilizers));
+    }
+    Sheet fert = sheet(wb, "Fertilizer", "FE_ID", "FEDATE", "FECD", "FEAMN");
+    int r = 1;
+    for (int f = 0; f < fertilizers; f++) {
+      for (int a = 0; a < 3; a++) {
+        row(fert, r++, "FE" + f, FIRST_DAY + 30 * a + f % 30, "FE00" + (a + 1), 10.5 * (a + 1));
+      }
+    }
+  }
+
+  private static void weather(SXSSFWorkbook wb, int days) {
+    int stations = Math.max(1, days / 3650);
+    int perStation = days / stations;
+    Sheet st = sheet(wb, "Weather_stations", "WST_ID", "WST_LAT", "WST_LONG", "WST_ELEV");
+    for (int s = 0; s < stations; s++) {
+      row(st, s + 1, "WST" + s, 30.0 + s * 0.01, -84.0 - s * 0.01, 100 + s);
+    }
+    Sheet daily = sheet(wb, "Weather_daily", "WST_ID", "W_DATE", "SRAD", "TMAX", "TMIN", "RAIN");
+    int r = 1;
+    for (int s = 0; s < stations; s++) {
+      for (int d = 0; d < perStation; d++) {
+        double season = Math.sin(d * 2 * Math.PI / 365.0);
+        row(daily, r++, "WST" + s, FIRST_DAY + d, 15.0 + 8 * season, 25.0 + 10 * season, 12.0 + 8 * season, (d % 5 == 0) ? 12.4 : 0);
+      }
+    }
+  }
+
+  private static void soil(SXSSFWorkbook wb, int layers) {
+    int profiles = Math.max(1, layers / 5);
+    Sheet soil = sheet(wb, "Soil_profiles", "SOIL_ID", "SL_SOURCE", "SLTX", "SLDP");
+    for (int p = 0; p < profiles; p++) {
+      row(soil, p + 1, "SOIL" + p, "SURVEY", (p % 2 == 0) ? "SIL" : "CL", 150);
+    }
+    Sheet layer = sheet(wb, "Soil_layers", "SOIL_ID", "SLLB", "SLOC", "SLBDM", "SLLL");
+    for (int l = 0; l < profiles * 5; l++) {
+      int depth = (l % 5 + 1) * 30;
+      row(layer, l + 1, "SOIL" + (l / 5), depth, 1.2 - 0.2 * (l % 5), 1.35, 0.12);
+    }
+  }
+
+  private static Sheet sheet(SXSSFWorkbook wb, String name, String... header) {
+    Sheet sheet = wb.createSheet(name);
+    row(sheet, 0, (Object[]) header);
+    return sheet;
+  }
+
+  private static void row(Sheet sheet, int r, Object... values) {
+    Row row = sheet.createRow(r);
+    for (int c = 0; c < values.length; c++) {
+      Object v = values[c];
+      if (v instanceof Number) {
+        row.createCell(c).setCellValue(((Number) v).doubleValue());
+      } else {
+        row.createCell(c).setCellValue(v.toString());
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println("Usage: WorkbookGenerator <EXPERIMENT|WEATHER_DAILY|SOIL_LAYER> <size> <output.xlsx>");
+      System.exit(1);
+    }
+    generate(Template.valueOf(args[0]), Integer.parseInt(args[1]), Paths.get(args[2]));
+  }
+}
@@ -0,0 +1,124 @@
+package org.agmip.translators.excel.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.agmip.translators.excel.api.DataNode;
+import org.agmip.translators.excel.api.SharedStrings;
+import org.agmip.translators.excel.api.SheetData;
+import org.agmip.translators.excel.api.handler.IngestionHandler;
+import org.agmip.translators.excel.api.handler.WorksheetScanner;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Throughput of the {@link WorksheetScanner} against the SAX parser over every inflated
+ * sheet part of a generated workbook, both feeding an {@link IngestionHandler}.
+ *
+ * The trial setup first scans every part both ways and fails unless the captured
+ * {@link SheetData} are identical, so the numbers are only reported for a scanner that
+ * conforms to the SAX path on the template.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WorksheetScannerBenchmark {
+  @Param({"EXPERIMENT", "WEATHER_DAILY", "SOIL_LAYER"})
+  public WorkbookGenerator.Template template;
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  private List<byte[]> sheetParts;
+  private SharedStrings strings;
+  private XMLReader parser;
+  private WorksheetScanner scanner;
+
+  @Setup(Level.Trial)
+  public void extract() throws Exception {
+    Path file = WorkbookGenerator.generate(template, size);
+    sheetParts = new ArrayList<>();
+    try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+      XSSFReader reader = new XSSFReader(pkg);
+      try (InputStream in = reader.getSharedStringsData()) {
+        strings = SharedStrings.load(in, SharedStrings.Storage.HEAP);
+      }
+      XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+      while (sheets.hasNext()) {
+        try (InputStream in = sheets.next()) {
+          sheetParts.add(IOUtils.toByteArray(in));
+        }
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    parser = factory.newSAXParser().getXMLReader();
+    scanner = new WorksheetScanner();
+    for (int i = 0; i < sheetParts.size(); i++) {
+      conform(i, sax(sheetParts.get(i)).data(), scan(sheetParts.get(i)).data());
+    }
+  }
+
+  private DataNode sax(byte[] part) throws Exception {
+    DataNode node = new DataNode("bench");
+    parser.setContentHandler(new IngestionHandler(node, strings));
+    parser.parse(new InputSource(new ByteArrayInputStream(part)));
+    return node;
+  }
+
+  private DataNode scan(byte[] part) throws Exception {
+    DataNode node = new DataNode("bench");
+    scanner.scan(new ByteArrayInputStream(part), new IngestionHandler(node, strings));
+    return node;
+  }
+
+  private static void conform(int sheet, SheetData expected, SheetData actual) {
+    if (expected.size() != actual.size() || expected.cells() != actual.cells()
+        || ! Arrays.equals(expected.header(), actual.header())) {
+      throw new IllegalStateException("Sheet " + sheet + " is not captured the same way by the scanner");
+    }
+    for (int r = 0; r < expected.size(); r++) {
+      if (expected.width(r) != actual.width(r)) {
+        throw new IllegalStateException("Sheet " + sheet + ", row " + r + " differs in width");
+      }
+      for (int c = 0; c < expected.width(r); c++) {
+        if (! Objects.equals(expected.value(r, c), actual.value(r, c))) {
+          throw new IllegalStateException("Sheet " + sheet + ", row " + r + ", column " + c + " differs");
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public int saxParser() throws Exception {
+    int rows = 0;
+    for (byte[] part : sheetParts) {
+      rows += sax(part).data().size();
+    }
+    return rows;
+  }
+
+  @Benchmark
+  public int worksheetScanner() throws Exception {
+    int rows = 0;
+    for (byte[] part : sheetParts) {
+      rows += scan(part).data().size();
+    }
+    return rows;
+  }
+}
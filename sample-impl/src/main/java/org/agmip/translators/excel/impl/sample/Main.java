@@ -1,22 +1,189 @@
 package org.agmip.translators.excel.impl.sample;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.agmip.translators.excel.api.ExcelModel;
-import org.agmip.ace.AceDataset;
-import org.agmip.ace.io.AceGenerator;
+import org.agmip.translators.excel.api.TranslationPlanCache;
+import org.agmip.translators.excel.api.io.AcebWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class Main {
   public static final Logger LOG = LoggerFactory.getLogger(Main.class);
   public static void main(String[] argv) throws Exception {
+    if (argv.length > 0 && argv[0].equals("--batch")) {
+      if (argv.length < 3) {
+        LOG.error("Usage: --batch <directory|manifest> <output directory> [threads]");
+        System.exit(1);
+      }
+      int threads = (argv.length > 3) ? Integer.parseInt(argv[3]) : Runtime.getRuntime().availableProcessors();
+      if (batch(Paths.get(argv[1]), Paths.get(argv[2]), threads) > 0) {
+        System.exit(1);
+      }
+      return;
+    }
     Path file = Paths.get(argv[0]);
     Path out  = Paths.get(argv[1]);
-    ExcelModel model = new ExcelModel(file);
-    model.init();
-    AceDataset ds = model.run();
-    LOG.info("Writing file: {}", out.toFile());
-    AceGenerator.generateACEB(out.toFile(), ds);
+    translate(file, out, null, 1);
+  }
+
+  /**
+   * Translates one workbook with the memory budgets of one of {@code workers} concurrent
+   * translations sharing the heap.
+   */
+  private static long translate(Path file, Path out, TranslationPlanCache plans, int workers) throws Exception {
+    try (ExcelModel model = new ExcelModel(file)) {
+      model.planCache(plans);
+      model.translationCacheLimit(Runtime.getRuntime().maxMemory() / 4 / workers);
+      model.referenceMemoryLimit(Runtime.getRuntime().maxMemory() / 8 / workers);
+      model.init();
+      LOG.info("Writing file: {}", out.toFile());
+      AcebWriter writer = new AcebWriter(out);
+      try {
+        model.run(writer);
+      } catch (Exception e) {
+        // Closing the writer would leave a well-formed but truncated document behind
+        writer.discard();
+        Files.deleteIfExists(out);
+        throw e;
+      }
+      writer.close();
+      LOG.debug("{}:\n{}", file, model.metrics());
+      return model.rows();
+    }
+  }
+
+  /**
+   * Translates every workbook of a directory, or listed in a manifest file (one path per
+   * line), in this JVM with at most {@code threads} workbooks in flight. Workbooks built
+   * from the same template share the plan cached under {@code <output directory>/.plans}.
+   * Each workbook is written to an ACEB file of the same base name, so the batch is
+   * refused when two workbooks of a manifest share a name. Returns the number of
+   * workbooks that failed.
+   */
+  private static int batch(Path input, Path outDir, int threads) throws Exception {
+    List<Path> workbooks = workbooks(input);
+    Map<Path, Path> outputs = new LinkedHashMap<>();
+    for (Path wb : workbooks) {
+      Path out = outDir.resolve(aceName(wb));
+      Path previous = outputs.putIfAbsent(out, wb);
+      if (null != previous) {
+        throw new IllegalArgumentException(previous + " and " + wb + " would both be written to " + out);
+      }
+    }
+    Files.createDirectories(outDir);
+    TranslationPlanCache plans = new TranslationPlanCache(outDir.resolve(".plans"));
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    int workers = Math.max(1, Math.min(threads, outputs.size()));
+    List<Future<Result>> pending = new ArrayList<>(workbooks.size());
+    List<Path> submitted = new ArrayList<>(workbooks.size());
+    long started = System.nanoTime();
+    try {
+      for (Map.Entry<Path, Path> output : outputs.entrySet()) {
+        Path out = output.getKey();
+        Path wb = output.getValue();
+        submitted.add(wb);
+        pending.add(pool.submit(() -> {
+          long start = System.nanoTime();
+          try {
+            long rows = translate(wb, out, plans, workers);
+            return new Result(wb, rows, System.nanoTime() - start, null);
+          } catch (Exception e) {
+            LOG.error("Unable to translate {}", wb, e);
+            return new Result(wb, 0, System.nanoTime() - start, e);
+          }
+        }));
+      }
+      List<Result> results = new ArrayList<>(pending.size());
+      for (int i = 0; i < pending.size(); i++) {
+        try {
+          results.add(pending.get(i).get());
+        } catch (ExecutionException e) {
+          LOG.error("Batch task failed for {}", submitted.get(i), e.getCause());
+          Throwable cause = e.getCause();
+          results.add(new Result(submitted.get(i), 0, 0,
+              (cause instanceof Exception) ? (Exception) cause : new Exception(cause)));
+        }
+      }
+      return summarize(results, System.nanoTime() - started);
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  private static List<Path> workbooks(Path input) throws IOException {
+    List<Path> workbooks = new ArrayList<>();
+    if (Files.isDirectory(input)) {
+      try (DirectoryStream<Path> dir = Files.newDirectoryStream(input, "*.xlsx")) {
+        for (Path p : dir) {
+          workbooks.add(p);
+        }
+      }
+      Collections.sort(workbooks);
+    } else {
+      for (String line : Files.readAllLines(input, StandardCharsets.UTF_8)) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) continue;
+        workbooks.add(input.resolveSibling(line));
+      }
+    }
+    return workbooks;
+  }
+
+  private static String aceName(Path workbook) {
+    String name = workbook.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    return ((dot > 0) ? name.substring(0, dot) : name) + ".aceb";
+  }
+
+  private static int summarize(List<Result> results, long elapsed) {
+    long totalRows = 0;
+    int failed = 0;
+    for (Result r : results) {
+      double seconds = r.nanos / 1e9;
+      if (null == r.failure) {
+        LOG.info("{}: {} rows in {} ms ({} rows/s)", r.workbook.getFileName(), r.rows,
+            TimeUnit.NANOSECONDS.toMillis(r.nanos), String.format("%.0f", r.rows / Math.max(seconds, 1e-9)));
+        totalRows += r.rows;
+      } else {
+        LOG.info("{}: FAILED after {} ms ({})", r.workbook.getFileName(),
+            TimeUnit.NANOSECONDS.toMillis(r.nanos), r.failure.getMessage());
+        failed++;
+      }
+    }
+    double seconds = elapsed / 1e9;
+    LOG.info("Translated {} of {} workbook(s), {} rows in {} ms ({} rows/s)", results.size() - failed,
+        results.size(), totalRows, TimeUnit.NANOSECONDS.toMillis(elapsed),
+        String.format("%.0f", totalRows / Math.max(seconds, 1e-9)));
+    return failed;
+  }
+
+  private static class Result {
+    private final Path workbook;
+    private final long rows;
+    private final long nanos;
+    private final Exception failure;
+
+    private Result(Path workbook, long rows, long nanos, Exception failure) {
+      this.workbook = workbook;
+      this.rows = rows;
+      this.nanos = nanos;
+      this.failure = failure;
+    }
   }
 }
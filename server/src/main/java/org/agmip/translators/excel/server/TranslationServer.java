@@ -0,0 +1,341 @@
+package org.agmip.translators.excel.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.agmip.translators.excel.api.AceSink;
+import org.agmip.translators.excel.api.ExcelModel;
+import org.agmip.translators.excel.api.TranslationPlanCache;
+import org.agmip.translators.excel.api.io.AcebWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Translates workbooks posted to {@code /translate} and answers with the ACEB document,
+ * streamed as its roots are translated, in one long-running JVM.
+ *
+ * Requests run on a virtual thread each when the JVM has them, on a cached pool
+ * otherwise. At most {@code concurrency} translations run at once; up to {@code queue}
+ * more wait for a slot, for at most the queue timeout, and anything past that is turned
+ * away with a 503 so the latency of admitted requests stays bounded. The plan cache and
+ * the variable path table are shared by all requests, so a template is only inferred
+ * once and POI, XMLBeans and the lookup tables stay loaded between requests.
+ */
+public class TranslationServer {
+  public static final Logger LOG = LoggerFactory.getLogger(TranslationServer.class);
+  private static final String ACEB_TYPE = "application/octet-stream";
+  private final HttpServer http;
+  private final ExecutorService requests;
+  private final TranslationPlanCache plans;
+  private final Semaphore slots;
+  private final int concurrency;
+  private final int queueLimit;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private long queueTimeoutMillis = 30000L;
+  private long maxUploadBytes = 256L * 1024L * 1024L;
+  private final long translationBudget;
+  private final long referenceBudget;
+
+  public TranslationServer(InetSocketAddress address, int concurrency, int queue, Path plans) throws IOException {
+    this.http = HttpServer.create(address, concurrency + queue);
+    this.requests = requestExecutor();
+    this.plans = new TranslationPlanCache(plans);
+    this.slots = new Semaphore(concurrency, true);
+    this.concurrency = concurrency;
+    this.queueLimit = queue;
+    // The heap is shared by every translation in flight
+    this.translationBudget = Runtime.getRuntime().maxMemory() / 4 / concurrency;
+    this.referenceBudget = Runtime.getRuntime().maxMemory() / 8 / concurrency;
+    this.http.setExecutor(requests);
+    this.http.createContext("/translate", this::translate);
+    this.http.createContext("/status", this::status);
+  }
+
+  public static void main(String[] argv) throws Exception {
+    if (argv.length < 1) {
+      LOG.error("Usage: <port> [concurrency] [queue] [plan directory] [warm-up workbook]");
+      System.exit(1);
+    }
+    int port = Integer.parseInt(argv[0]);
+    int concurrency = (argv.length > 1) ? Integer.parseInt(argv[1]) : Runtime.getRuntime().availableProcessors();
+    int queue = (argv.length > 2) ? Integer.parseInt(argv[2]) : concurrency * 4;
+    Path plans = (argv.length > 3) ? Paths.get(argv[3]) : Files.createTempDirectory("aceb-plans");
+    TranslationServer server = new TranslationServer(new InetSocketAddress(port), concurrency, queue, plans);
+    if (argv.length > 4) {
+      server.warmUp(Paths.get(argv[4]));
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    server.start();
+    LOG.info("Translating on port {} with {} slot(s) and a queue of {}, plans in {}", port, concurrency, queue, plans);
+  }
+
+  /**
+   * Sets how long a request may wait for a translation slot before it is rejected.
+   */
+  public void queueTimeout(long millis) {
+    this.queueTimeoutMillis = millis;
+  }
+
+  /**
+   * Sets the largest workbook accepted, in bytes.
+   */
+  public void maxUploadBytes(long bytes) {
+    this.maxUploadBytes = bytes;
+  }
+
+  public void start() {
+    http.start();
+  }
+
+  public void stop() {
+    http.stop(2);
+    requests.shutdown();
+  }
+
+  /**
+   * Translates a workbook and discards the result, so the first request does not pay for
+   * class loading, the variable paths of the template and its plan.
+   */
+  public void warmUp(Path workbook) throws Exception {
+    long start = System.nanoTime();
+    try (ExcelModel model = new ExcelModel(workbook)) {
+      model.planCache(plans);
+      model.init();
+      model.run(new AceSink() {
+        @Override
+        public void experiment(byte[] raw) {}
+
+        @Override
+        public void weather(byte[] raw) {}
+
+        @Override
+        public void soil(byte[] raw) {}
+      });
+    }
+    LOG.info("Warmed up with {} in {} ms", workbook, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  private void translate(HttpExchange exchange) throws IOException {
+    try {
+      if (! "POST".equals(exchange.getRequestMethod())) {
+        respond(exchange, 405, "Workbooks are translated with POST");
+        return;
+      }
+      if (! admit()) {
+        rejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        respond(exchange, 503, "Too many translations in progress");
+        return;
+      }
+      try {
+        handle(exchange);
+      } finally {
+        slots.release();
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Waits for a translation slot when the queue has room.
+   */
+  private boolean admit() {
+    if (slots.tryAcquire()) {
+      return true;
+    }
+    if (queued.incrementAndGet() > queueLimit) {
+      queued.decrementAndGet();
+      return false;
+    }
+    try {
+      return slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      queued.decrementAndGet();
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    byte[] workbook;
+    try {
+      workbook = upload(exchange);
+    } catch (NumberFormatException e) {
+      respond(exchange, 400, "Malformed Content-Length");
+      return;
+    }
+    if (null == workbook) {
+      respond(exchange, 413, "Workbooks are limited to " + maxUploadBytes + " bytes");
+      return;
+    }
+    ExcelModel model;
+    try {
+      model = new ExcelModel(workbook);
+    } catch (Exception e) {
+      failed.incrementAndGet();
+      respond(exchange, 400, "Not a readable workbook: " + e.getMessage());
+      return;
+    }
+    try {
+      model.planCache(plans);
+      model.translationCacheLimit(translationBudget);
+      model.referenceMemoryLimit(referenceBudget);
+      model.init();
+    } catch (Exception e) {
+      model.close();
+      failed.incrementAndGet();
+      LOG.error("Unable to read the workbook posted by {}", exchange.getRemoteAddress(), e);
+      respond(exchange, 422, "Unable to read the workbook: " + e.getMessage());
+      return;
+    }
+    try {
+      // Headers go out with the first byte of the document, so a translation that fails
+      // before producing anything can still be answered with an error status
+      ResponseStream body = new ResponseStream(exchange);
+      AcebWriter writer = new AcebWriter(body);
+      try {
+        model.run(writer);
+      } catch (Exception e) {
+        writer.discard();
+        failed.incrementAndGet();
+        LOG.error("Translation failed for {}", exchange.getRemoteAddress(), e);
+        if (! writer.started()) {
+          respond(exchange, 500, "Translation failed: " + e.getMessage());
+        }
+        // Otherwise the document is cut short and its gzip stream never finished, which
+        // the client sees as a failed download
+        return;
+      }
+      writer.close();
+      completed.incrementAndGet();
+      LOG.info("Translated {} rows for {} in {} ms", model.rows(), exchange.getRemoteAddress(),
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } finally {
+      model.close();
+    }
+  }
+
+  /**
+   * Request body, or {@code null} when it is larger than the upload limit. The buffer
+   * grows with the data actually received rather than the length the client claims.
+   */
+  private byte[] upload(HttpExchange exchange) throws IOException {
+    String length = exchange.getRequestHeaders().getFirst("Content-Length");
+    if (null != length && Long.parseLong(length.trim()) > maxUploadBytes) {
+      return null;
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream(65536);
+    byte[] buffer = new byte[65536];
+    try (InputStream in = exchange.getRequestBody()) {
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        body.write(buffer, 0, n);
+        if (body.size() > maxUploadBytes) {
+          return null;
+        }
+      }
+    }
+    return body.toByteArray();
+  }
+
+  private void status(HttpExchange exchange) throws IOException {
+    try {
+      String status = "active " + (concurrency - slots.availablePermits()) + "\n"
+          + "queued " + queued.get() + "\n"
+          + "completed " + completed.get() + "\n"
+          + "failed " + failed.get() + "\n"
+          + "rejected " + rejected.get() + "\n";
+      respond(exchange, 200, status);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int code, String message) throws IOException {
+    byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(code, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /**
+   * Response body that sends the 200 headers, with chunked encoding, on the first write.
+   */
+  private static final class ResponseStream extends FilterOutputStream {
+    private final HttpExchange exchange;
+    private boolean started = false;
+
+    private ResponseStream(HttpExchange exchange) {
+      super(null);
+      this.exchange = exchange;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      start().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      start().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (started) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      start().close();
+    }
+
+    private OutputStream start() throws IOException {
+      if (! started) {
+        started = true;
+        exchange.getResponseHeaders().set("Content-Type", ACEB_TYPE);
+        exchange.sendResponseHeaders(200, 0);
+        out = exchange.getResponseBody();
+      }
+      return out;
+    }
+  }
+
+  /**
+   * One virtual thread per request on JVMs that have them, looked up reflectively so the
+   * server still runs on older JVMs.
+   */
+  private static ExecutorService requestExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      LOG.info("Virtual threads are not available, handling requests on a cached thread pool");
+      return Executors.newCachedThreadPool();
+    }
+  }
+}